@@ -0,0 +1,41 @@
+package chatroom;
+
+/**
+ * BenchSession类 - 基准测试用的会话
+ * 作用：代替真实连接接收广播，只计数不写socket，基准测试测到的就是服务器自己的分发开销
+ */
+class BenchSession implements ChatSession {
+    private String username;  // 用户名
+    private String room;  // 所在房间
+    long received;  // 收到的消息条数
+
+    @Override
+    public void sendEncoded(EncodedMessage message) {
+        received++;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    @Override
+    public String getRoom() {
+        return room;
+    }
+
+    @Override
+    public void setRoom(String room) {
+        this.room = room;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+}
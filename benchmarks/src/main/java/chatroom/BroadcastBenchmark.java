@@ -0,0 +1,56 @@
+package chatroom;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BroadcastBenchmark类 - 广播扇出
+ * 作用：测量一条消息发给10、1000、10000个在线用户的耗时
+ * 知识点：
+ * 1. @Param - 每个接收者人数单独fork一个JVM，Server的静态状态互不影响
+ * 2. 接收者是BenchSession，只计数不写socket，测到的是编码和遍历会话的开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dchat.logging.file=")
+public class BroadcastBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int recipients;  // 在线用户数
+
+    private BenchSession sender;  // 发送者
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i <= recipients; i++) {
+            BenchSession session = new BenchSession();
+            Server.addClient(session);
+            Server.bindUsername(session, "user" + i);
+            if (sender == null) {
+                sender = session;
+            }
+        }
+    }
+
+    @Benchmark
+    public void broadcastMessage() {
+        Server.broadcastMessage("[user0]: hello everyone", sender);
+    }
+
+    @Benchmark
+    public void broadcastToRoom() {
+        Server.broadcastToRoom(RoomManager.DEFAULT_ROOM, "[user0]: hello everyone", sender);
+    }
+}
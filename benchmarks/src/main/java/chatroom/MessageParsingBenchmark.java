@@ -0,0 +1,59 @@
+package chatroom;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MessageParsingBenchmark类 - 客户端消息解析
+ * 作用：测量ClientHandler/NioSession收到一行消息后，MessageHandler识别命令和取出参数的耗时
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dchat.logging.file=")
+public class MessageParsingBenchmark {
+    private final String loginLine = "LOGIN:username=zhangsan&password=a123";  // 登录
+    private final String escapedLine = ProtocolCodec.encode(ProtocolCodec.Command.MSG,
+            "to", "zhangsan", "text", "a&b=c 100%");  // 带转义字符的私聊
+    private final String chatLine = ProtocolCodec.encode(ProtocolCodec.Command.MSG,
+            "text", "大家好，今天晚上一起吃饭吗？");  // 普通聊天消息
+    private final String getUsersLine = "GET_USERS";  // 不带参数的命令
+
+    @Benchmark
+    public String parseLogin() {
+        ProtocolCodec.Command command = ProtocolCodec.parseCommand(loginLine);
+        return ProtocolCodec.field(loginLine, command, "username") + ProtocolCodec.field(loginLine, command, "password");
+    }
+
+    @Benchmark
+    public String parseEscaped() {
+        ProtocolCodec.Command command = ProtocolCodec.parseCommand(escapedLine);
+        return ProtocolCodec.field(escapedLine, command, "text");
+    }
+
+    @Benchmark
+    public String parseChat() {
+        ProtocolCodec.Command command = ProtocolCodec.parseCommand(chatLine);
+        return ProtocolCodec.field(chatLine, command, "text");
+    }
+
+    @Benchmark
+    public ProtocolCodec.Command parseGetUsers() {
+        return ProtocolCodec.parseCommand(getUsersLine);
+    }
+
+    @Benchmark
+    public String encodeLogin() {
+        return ProtocolCodec.encode(ProtocolCodec.Command.LOGIN, "username", "zhangsan", "password", "a123");
+    }
+}
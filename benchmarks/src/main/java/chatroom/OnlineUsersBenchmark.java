@@ -0,0 +1,54 @@
+package chatroom;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * OnlineUsersBenchmark类 - 在线用户列表
+ * 作用：测量GET_USERS的耗时，分为列表没有变化（直接返回缓存）和每次都有用户上下线（重新生成）两种情况
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dchat.logging.file=")
+public class OnlineUsersBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int users;  // 在线用户数
+
+    private boolean toggled;  // churn用户当前是否在线
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < users; i++) {
+            Server.getPresence().online("user" + i);
+        }
+    }
+
+    @Benchmark
+    public EncodedMessage cached() {
+        return Server.getOnlineUsers();
+    }
+
+    @Benchmark
+    public EncodedMessage afterChange() {
+        if (toggled) {
+            Server.getPresence().offline("churnuser");
+        } else {
+            Server.getPresence().online("churnuser");
+        }
+        toggled = !toggled;
+        return Server.getOnlineUsers();
+    }
+}
@@ -0,0 +1,81 @@
+package chatroom;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * UserManagerBenchmark类 - 登录、注册和用户名校验
+ * 作用：测量UserManager.login/register/isValidUsername各条路径的耗时
+ * 知识点：
+ * 1. 成功注册会写用户日志并等待fsync，这里只测不落盘的路径（用户名已存在、格式错误），
+ *    加上单独的PasswordHasher.hash，两者相加就是一次成功注册的CPU开销
+ * 2. 基准用户在第一次运行时注册，保存在当前目录的users.journal中，所以要在空目录中运行
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dchat.logging.file=")
+public class UserManagerBenchmark {
+    private static final String USERNAME = "benchmarkuser";  // 基准用户
+    private static final String PASSWORD = "b1234";  // 基准用户的密码
+
+    @Setup
+    public void setUp() {
+        if (!UserManager.isUsernameExists(USERNAME)) {
+            UserManager.register(USERNAME, PASSWORD);
+        }
+    }
+
+    @Benchmark
+    public String loginSuccess() {
+        return UserManager.login(USERNAME, PASSWORD);
+    }
+
+    @Benchmark
+    public String loginWrongPassword() {
+        return UserManager.login(USERNAME, "b9999");
+    }
+
+    @Benchmark
+    public String loginUnknownUser() {
+        return UserManager.login("nosuchuser", PASSWORD);
+    }
+
+    @Benchmark
+    public String registerExisting() {
+        return UserManager.register(USERNAME, PASSWORD);
+    }
+
+    @Benchmark
+    public String registerInvalid() {
+        return UserManager.register("bad_name1", PASSWORD);
+    }
+
+    @Benchmark
+    public String hashPassword() {
+        return PasswordHasher.hash(PASSWORD);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean isValidUsername() {
+        return UserManager.isValidUsername(USERNAME);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean isValidUsernameRejected() {
+        return UserManager.isValidUsername("bad_name1");
+    }
+}
@@ -0,0 +1,115 @@
+package chatroom;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * AuthService类 - 认证线程池
+ * 作用：登录和注册需要计算慢哈希，放到专用的有界线程池中执行，
+ *      不占用处理聊天消息的线程（NIO模式下更不能阻塞Selector线程）；
+ *      队列满时直接拒绝，服务器重启后的登录高峰不会拖垮整个服务器
+ * 知识点：
+ * 1. ThreadPoolExecutor - 固定线程数 + 有界队列 + 拒绝策略
+ * 2. CompletableFuture - 认证完成后再回调处理结果
+ * 3. LongAdder - 统计认证吞吐量和拒绝次数
+ */
+public class AuthService {
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+            ServerConfig.AUTH_THREADS, ServerConfig.AUTH_THREADS, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(ServerConfig.AUTH_QUEUE),
+            task -> {
+                Thread thread = new Thread(task, "auth-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+
+    private static final LongAdder completed = new LongAdder();  // 已完成的认证数
+    private static final LongAdder rejected = new LongAdder();  // 队列满被拒绝的认证数
+    private static final LongAdder totalNanos = new LongAdder();  // 认证总耗时（不含排队）
+
+    /**
+     * 异步登录
+     * @param username 用户名
+     * @param password 密码
+     * @return 登录结果信息
+     */
+    public static CompletableFuture<String> login(String username, String password) {
+        long start = System.nanoTime();
+        return submit(() -> UserManager.login(username, password), "登录失败：服务器繁忙，请稍后再试")
+                .whenComplete((result, error) -> ServerMetrics.LOGIN.recordSince(start));
+    }
+
+    /**
+     * 异步注册
+     * @param username 用户名
+     * @param password 密码
+     * @return 注册结果信息
+     */
+    public static CompletableFuture<String> register(String username, String password) {
+        return submit(() -> UserManager.register(username, password), "注册失败：服务器繁忙，请稍后再试");
+    }
+
+    /**
+     * 提交认证任务
+     * @param task 认证任务
+     * @param busyMessage 被拒绝时返回的信息
+     * @return 认证结果
+     */
+    private static CompletableFuture<String> submit(Supplier<String> task, String busyMessage) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                try {
+                    return task.get();
+                } finally {
+                    totalNanos.add(System.nanoTime() - start);
+                    completed.increment();
+                }
+            }, pool);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return CompletableFuture.completedFuture(busyMessage);
+        }
+    }
+
+    /**
+     * 获取已完成的认证数
+     * @return 完成数
+     */
+    public static long getCompleted() {
+        return completed.sum();
+    }
+
+    /**
+     * 获取被拒绝的认证数
+     * @return 拒绝数
+     */
+    public static long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * 获取排队等待的认证数
+     * @return 队列长度
+     */
+    public static int getQueueDepth() {
+        return pool.getQueue().size();
+    }
+
+    /**
+     * 获取平均认证耗时
+     * @return 平均耗时（毫秒）
+     */
+    public static double getAverageMillis() {
+        long count = completed.sum();
+        return count == 0 ? 0 : totalNanos.sum() / 1_000_000.0 / count;
+    }
+}
@@ -0,0 +1,536 @@
+package chatroom;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.DataFormatException;
+
+/**
+ * ChatClient类 - 异步聊天客户端
+ * 作用：一个实例对应一个连接，所有操作立即返回CompletableFuture，不等待服务器响应；
+ *      可以连续发出多个请求（流水线），响应按请求编号对应到请求上，其余消息交给监听器
+ * 用法：
+ *      ChatClient.connect("localhost", 8888)
+ *              .thenCompose(client -> client.login("zhangsan", "a123").thenApply(reply -> client))
+ *              .thenAccept(client -> client.send("大家好"));
+ * 知识点：
+ * 1. AsynchronousSocketChannel - 读写完成后在通道组的线程中回调，不占用调用者的线程，
+ *    多个客户端可以共用一个AsynchronousChannelGroup（少量线程驱动大量会话）
+ * 2. 请求流水线 - 每个请求带一个编号（id参数），服务器的回复是 REPLY:id=N&text=回复内容，
+ *    按编号找到等待中的请求并完成它，不看回复的内容；没有编号的行（房间消息、私聊、上下线通知、
+ *    重放的历史消息，以及send/sendDirect失败时的提示）都交给监听器，不会被当成某个请求的回复
+ * 3. 合并写 - 同一时间只能有一个写操作，写完成前积累的消息下次一起写出
+ * 4. 回调线程 - Future的后续操作和监听器都在I/O线程中执行，不能在其中阻塞
+ * 5. 心跳 - 服务器空闲检查发来的PING自动回复PONG，不交给监听器
+ * 6. 压缩 - negotiateCompression()协商成功后，收到的 "Z:" 开头的行先还原（见Compression）再分发，
+ *    调用者和监听器看到的始终是原消息
+ */
+public class ChatClient implements AutoCloseable {
+    private static final int READ_BUFFER_BYTES = 16 * 1024;  // 读缓冲区大小
+    private static final int MAX_LINE_BYTES = 1024 * 1024;  // 一行的最大长度
+    private static final int WRITE_BATCH = 64;  // 一次最多合并写出的消息数
+
+    /**
+     * 监听器
+     * 作用：接收不是请求响应的消息
+     */
+    public interface Listener {
+
+        /**
+         * 收到一行消息
+         * @param line 消息（不包含换行符）
+         */
+        void onMessage(String line);
+
+        /**
+         * 连接已关闭
+         * @param cause 关闭的原因，主动关闭时为null
+         */
+        default void onClosed(Throwable cause) {
+        }
+    }
+
+    /**
+     * 等待写出的消息
+     */
+    private static final class PendingWrite {
+        final ByteBuffer buffer;  // 消息内容（包含换行符）
+        final CompletableFuture<Void> written = new CompletableFuture<>();  // 写出后完成
+
+        PendingWrite(String line) {
+            byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+            this.buffer = ByteBuffer.wrap(bytes);
+        }
+    }
+
+    private final AsynchronousSocketChannel channel;  // 连接
+    private final Map<Long, CompletableFuture<String>> pending = new HashMap<>();  // 请求编号 -> 等待中的响应，由this保护
+    private long nextRequestId;  // 下一个请求编号，由this保护
+    private final Queue<PendingWrite> writes = new ConcurrentLinkedQueue<>();  // 等待写出的消息
+    private final AtomicBoolean writing = new AtomicBoolean();  // 是否有写操作正在进行
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();  // 监听器
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_BYTES);  // 读缓冲区，只在读回调中使用
+    private byte[] line = new byte[256];  // 还没读到换行符的半行，只在读回调中使用
+    private int lineLength;  // 半行的长度
+    private final AtomicBoolean closed = new AtomicBoolean();  // 是否已关闭
+    private volatile String username;  // 登录成功的用户名
+    private volatile boolean compressed;  // 服务器是否同意压缩
+
+    private ChatClient(AsynchronousSocketChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * 连接服务器（使用默认通道组）
+     * @param host 服务器地址
+     * @param port 服务器端口
+     * @return 连接成功后完成的Future
+     */
+    public static CompletableFuture<ChatClient> connect(String host, int port) {
+        return connect(host, port, null);
+    }
+
+    /**
+     * 连接服务器
+     * @param host 服务器地址
+     * @param port 服务器端口
+     * @param group 通道组，为null时使用默认通道组
+     * @return 连接成功后完成的Future
+     */
+    public static CompletableFuture<ChatClient> connect(String host, int port, AsynchronousChannelGroup group) {
+        CompletableFuture<ChatClient> connected = new CompletableFuture<>();
+        AsynchronousSocketChannel channel;
+        try {
+            channel = AsynchronousSocketChannel.open(group);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        channel.connect(new InetSocketAddress(host, port), null, new CompletionHandler<Void, Void>() {
+            @Override
+            public void completed(Void result, Void attachment) {
+                ChatClient client = new ChatClient(channel);
+                client.readNext();
+                connected.complete(client);
+            }
+
+            @Override
+            public void failed(Throwable e, Void attachment) {
+                closeQuietly(channel);
+                connected.completeExceptionally(e);
+            }
+        });
+        return connected;
+    }
+
+    /**
+     * 添加监听器
+     * @param listener 监听器
+     * @return 本客户端
+     */
+    public ChatClient addListener(Listener listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 获取登录成功的用户名
+     * @return 用户名，未登录时为null
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    public boolean isConnected() {
+        return !closed.get();
+    }
+
+    /**
+     * 协商压缩（应在连接后、其他请求之前调用）
+     * 作用：服务器同意后，发给本连接的长消息会压缩后发送，收到时自动还原；
+     *      服务器关闭了压缩时回复 compress=none，这时照常使用不压缩的协议
+     * @return 服务器同意压缩时为true
+     */
+    public CompletableFuture<Boolean> negotiateCompression() {
+        return request(ProtocolCodec.Command.HELLO, "compress", Compression.DEFLATE).thenApply(reply -> {
+                    // 在读回调中完成，之后收到的行已经能按压缩格式还原
+                    compressed = Compression.DEFLATE.equals(
+                            ProtocolCodec.field(reply, ProtocolCodec.Command.HELLO, "compress"));
+                    return compressed;
+                });
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * 登录
+     * @return 服务器的响应（"登录成功！欢迎 x" 或 "登录失败：……"）
+     */
+    public CompletableFuture<String> login(String username, String password) {
+        return request(ProtocolCodec.Command.LOGIN, "username", username, "password", password).thenApply(reply -> {
+                    if (reply.startsWith("登录成功")) {
+                        this.username = username;
+                    }
+                    return reply;
+                });
+    }
+
+    /**
+     * 注册（成功后自动登录）
+     * @return 服务器的响应（"注册成功！" 或 "注册失败：……"）
+     */
+    public CompletableFuture<String> register(String username, String password) {
+        return request(ProtocolCodec.Command.REGISTER, "username", username, "password", password).thenApply(reply -> {
+                    if (reply.startsWith("注册成功")) {
+                        this.username = username;
+                    }
+                    return reply;
+                });
+    }
+
+    /**
+     * 发送聊天消息给当前房间
+     * 作用：内容放在MSG命令的参数中发送，即使是 "PING" 或以 "LOGIN:" 开头也只会被当作聊天内容
+     * @param text 消息内容
+     * @return 写出后完成的Future
+     */
+    public CompletableFuture<Void> send(String text) {
+        return write(ProtocolCodec.encode(ProtocolCodec.Command.MSG, "text", text));
+    }
+
+    /**
+     * 发送私聊消息
+     * 作用：成功时服务器不回复，失败时的 "私聊失败：……" 交给监听器
+     * @return 写出后完成的Future
+     */
+    public CompletableFuture<Void> sendDirect(String to, String text) {
+        return write(ProtocolCodec.encode(ProtocolCodec.Command.MSG, "to", to, "text", text));
+    }
+
+    /**
+     * 获取在线用户列表
+     * @return 用户名列表
+     */
+    public CompletableFuture<List<String>> listUsers() {
+        return request(ProtocolCodec.Command.GET_USERS).thenApply(reply -> {
+            String prefix = "在线用户：";
+            if (!reply.startsWith(prefix)) {
+                throw new IllegalStateException(reply);
+            }
+            String names = reply.substring(prefix.length()).trim();
+            return names.isEmpty() ? List.of() : Arrays.asList(names.split(" "));
+        });
+    }
+
+    /**
+     * 加入房间
+     * @return 服务器的响应（"已加入房间：x" 或 "加入房间失败：……"）
+     */
+    public CompletableFuture<String> joinRoom(String room) {
+        return request(ProtocolCodec.Command.JOIN, "room", room);
+    }
+
+    /**
+     * 回到默认房间
+     */
+    public CompletableFuture<String> leaveRoom() {
+        return request(ProtocolCodec.Command.LEAVE);
+    }
+
+    /**
+     * 获取房间列表
+     * @return 形如 "房间列表：lobby(3) dev(1) " 的响应
+     */
+    public CompletableFuture<String> listRooms() {
+        return request(ProtocolCodec.Command.ROOMS);
+    }
+
+    /**
+     * 订阅或取消订阅用户上线、下线通知，通知交给监听器
+     */
+    public CompletableFuture<String> watchPresence(boolean subscribe) {
+        return request(ProtocolCodec.Command.PRESENCE, "subscribe", String.valueOf(subscribe));
+    }
+
+    /**
+     * 获取当前消息偏移量
+     * @return 响应（"当前消息偏移量：N" 或 "消息日志未开启"）
+     */
+    public CompletableFuture<String> offset() {
+        return request(ProtocolCodec.Command.OFFSET);
+    }
+
+    /**
+     * 重放当前房间从offset开始的消息，重放的消息交给监听器
+     * @return 重放结束后的响应（"重放完成：……" 或 "重放失败：……"）
+     */
+    public CompletableFuture<String> resume(long offset) {
+        return request(ProtocolCodec.Command.RESUME, "offset", String.valueOf(offset));
+    }
+
+    /**
+     * 检查连接是否还活着
+     * @return 收到 "PONG" 后完成的Future
+     */
+    public CompletableFuture<String> ping() {
+        return request(ProtocolCodec.Command.PING);
+    }
+
+    /**
+     * 获取服务器运行指标（只对管理员开放）
+     */
+    public CompletableFuture<String> stats() {
+        return request(ProtocolCodec.Command.STATS);
+    }
+
+    /**
+     * 关闭连接
+     * 作用：等待中的请求以异常完成，监听器收到onClosed(null)
+     */
+    @Override
+    public void close() {
+        shutdown(null);
+    }
+
+    /**
+     * 发送一个有响应的请求
+     * 作用：分配请求编号并作为id参数发送，服务器带着同一个编号回复；
+     *      登记请求和放入写队列在同一把锁中完成，和shutdown不会交错
+     * @param command 命令
+     * @param keyValues 参数名和参数值交替排列
+     * @return 响应（REPLY中的回复内容）
+     */
+    private CompletableFuture<String> request(ProtocolCodec.Command command, String... keyValues) {
+        CompletableFuture<String> reply = new CompletableFuture<>();
+        String[] fields = Arrays.copyOf(keyValues, keyValues.length + 2);
+        fields[keyValues.length] = "id";
+        synchronized (this) {
+            if (closed.get()) {
+                return CompletableFuture.failedFuture(new IOException("连接已关闭"));
+            }
+            long id = nextRequestId++;
+            fields[keyValues.length + 1] = Long.toString(id);
+            pending.put(id, reply);
+            writes.add(new PendingWrite(ProtocolCodec.encode(command, fields)));
+        }
+        flushWrites();
+        return reply;
+    }
+
+    private CompletableFuture<Void> write(String line) {
+        PendingWrite write = new PendingWrite(line);
+        synchronized (this) {
+            if (closed.get()) {
+                return CompletableFuture.failedFuture(new IOException("连接已关闭"));
+            }
+            writes.add(write);
+        }
+        flushWrites();
+        return write.written;
+    }
+
+    /**
+     * 没有写操作进行时，把队列中的消息合并成一次写出
+     */
+    private void flushWrites() {
+        while (!writes.isEmpty() && writing.compareAndSet(false, true)) {
+            List<PendingWrite> batch = new ArrayList<>();
+            PendingWrite next;
+            while (batch.size() < WRITE_BATCH && (next = writes.poll()) != null) {
+                batch.add(next);
+            }
+            if (batch.isEmpty()) {
+                writing.set(false);
+                continue;  // 别的线程刚取走了，重新检查
+            }
+            ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = batch.get(i).buffer;
+            }
+            writeBatch(batch, buffers, 0);
+            return;
+        }
+    }
+
+    private void writeBatch(List<PendingWrite> batch, ByteBuffer[] buffers, int offset) {
+        try {
+            channel.write(buffers, offset, buffers.length - offset, 0, null, null, new CompletionHandler<Long, Void>() {
+                @Override
+                public void completed(Long result, Void attachment) {
+                    int first = offset;
+                    while (first < buffers.length && !buffers[first].hasRemaining()) {
+                        batch.get(first).written.complete(null);
+                        first++;
+                    }
+                    if (first < buffers.length) {
+                        writeBatch(batch, buffers, first);  // 只写出了一部分
+                        return;
+                    }
+                    writing.set(false);
+                    flushWrites();
+                }
+
+                @Override
+                public void failed(Throwable e, Void attachment) {
+                    for (PendingWrite write : batch) {
+                        write.written.completeExceptionally(e);
+                    }
+                    shutdown(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            // 通道已关闭等情况下write会直接抛出异常
+            for (PendingWrite write : batch) {
+                write.written.completeExceptionally(e);
+            }
+            shutdown(e);
+        }
+    }
+
+    private void readNext() {
+        try {
+            channel.read(readBuffer, null, new CompletionHandler<Integer, Void>() {
+                @Override
+                public void completed(Integer count, Void attachment) {
+                    if (count < 0) {
+                        shutdown(new IOException("服务器关闭了连接"));
+                        return;
+                    }
+                    readBuffer.flip();
+                    try {
+                        splitLines();
+                    } catch (IOException e) {
+                        shutdown(e);
+                        return;
+                    }
+                    readBuffer.clear();
+                    readNext();
+                }
+
+                @Override
+                public void failed(Throwable e, Void attachment) {
+                    shutdown(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            shutdown(e);
+        }
+    }
+
+    /**
+     * 按换行符切分读到的数据，不完整的一行留到下次
+     * 作用：先按字节切分再解码，多字节的UTF-8字符被拆到两次读取中也不会出错
+     */
+    private void splitLines() throws IOException {
+        while (readBuffer.hasRemaining()) {
+            byte b = readBuffer.get();
+            if (b == '\n') {
+                int end = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+                String text = new String(line, 0, end, StandardCharsets.UTF_8);
+                lineLength = 0;
+                if (compressed && text.startsWith(Compression.PREFIX)) {
+                    try {
+                        text = Compression.inflate(text);
+                    } catch (DataFormatException e) {
+                        throw new IOException("无法还原压缩消息：" + e.getMessage(), e);
+                    }
+                }
+                dispatch(text);
+                continue;
+            }
+            if (lineLength == line.length) {
+                if (lineLength >= MAX_LINE_BYTES) {
+                    throw new IOException("服务器消息过长");
+                }
+                line = Arrays.copyOf(line, Math.min(lineLength * 2, MAX_LINE_BYTES));
+            }
+            line[lineLength++] = b;
+        }
+    }
+
+    /**
+     * 分发一行消息：是某个请求的回复（REPLY）就按编号完成它，否则交给监听器
+     */
+    private void dispatch(String message) {
+        if (message.equals("PING")) {
+            write("PONG");  // 服务器的心跳检查
+            return;
+        }
+        if (ProtocolCodec.parseCommand(message) == ProtocolCodec.Command.REPLY) {
+            String text = ProtocolCodec.field(message, ProtocolCodec.Command.REPLY, "text");
+            CompletableFuture<String> reply = takePending(ProtocolCodec.field(message, ProtocolCodec.Command.REPLY, "id"));
+            if (reply != null && text != null) {
+                reply.complete(text);
+                return;
+            }
+        }
+        for (Listener listener : listeners) {
+            listener.onMessage(message);
+        }
+    }
+
+    /**
+     * 取出等待中的请求
+     * @param id 回复中的请求编号
+     * @return 等待中的响应，编号无效或没有这个请求时返回null
+     */
+    private synchronized CompletableFuture<String> takePending(String id) {
+        try {
+            return id == null ? null : pending.remove(Long.parseLong(id));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void shutdown(Throwable cause) {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        closeQuietly(channel);
+        IOException closedError = new IOException("连接已关闭", cause);
+        List<CompletableFuture<String>> failed;
+        synchronized (this) {
+            failed = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        for (CompletableFuture<String> reply : failed) {
+            reply.completeExceptionally(closedError);
+        }
+        PendingWrite write;
+        while ((write = writes.poll()) != null) {
+            write.written.completeExceptionally(closedError);
+        }
+        for (Listener listener : listeners) {
+            listener.onClosed(cause);
+        }
+    }
+
+    private static void closeQuietly(AsynchronousSocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // 已经关闭
+        }
+    }
+}
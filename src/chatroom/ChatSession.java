@@ -0,0 +1,82 @@
+package chatroom;
+
+/**
+ * ChatSession接口 - 聊天会话抽象
+ * 作用：统一阻塞式的ClientHandler和NIO模式的NioSession，
+ *      让消息处理、广播、在线列表等逻辑不需要关心底层连接是哪种实现
+ * 知识点：
+ * 1. 接口 - 定义一组行为规范，由不同的类分别实现
+ * 2. 多态 - 同一段代码可以处理不同类型的会话
+ */
+public interface ChatSession {
+
+    /**
+     * 发送消息给客户端
+     * @param message 要发送的消息（不包含换行符）
+     */
+    default void sendMessage(String message) {
+        sendEncoded(EncodedMessage.of(message));
+    }
+
+    /**
+     * 发送已编码的消息给客户端
+     * 作用：广播时同一个EncodedMessage会交给所有接收者，实现类不能修改它
+     * @param message 已编码的消息
+     */
+    void sendEncoded(EncodedMessage message);
+
+    /**
+     * 获取用户名
+     * @return 用户名，未登录时为null
+     */
+    String getUsername();
+
+    /**
+     * 设置用户名（登录或注册成功后调用）
+     * @param username 用户名
+     */
+    void setUsername(String username);
+
+    /**
+     * 获取所在房间
+     * @return 房间名，未加入房间时为null
+     */
+    String getRoom();
+
+    /**
+     * 设置所在房间（由RoomManager调用）
+     * @param room 房间名
+     */
+    void setRoom(String room);
+
+    /**
+     * 获取发送队列中等待写出的消息数
+     * @return 队列长度
+     */
+    default int getOutboundQueueSize() {
+        return 0;
+    }
+
+    /**
+     * 获取发送速率和登录失败次数限制
+     * @return 限制器，不需要限制的会话（服务器间连接）返回null
+     */
+    default RateLimiter getRateLimiter() {
+        return null;
+    }
+
+    /**
+     * 开启压缩（客户端发送HELLO:compress=deflate后调用）
+     * 作用：之后发给这个会话的长消息改为发送压缩后的形式
+     * @return 开启成功返回true，不支持压缩的会话返回false
+     */
+    default boolean enableCompression() {
+        return false;
+    }
+
+    /**
+     * 获取连接状态
+     * @return 是否已连接
+     */
+    boolean isConnected();
+}
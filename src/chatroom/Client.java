@@ -1,20 +1,18 @@
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
+package chatroom;
+
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Client类 - 客户端主类
  * 作用：处理客户端的用户交互逻辑
  * 当前功能：启动程序，让用户选择注册或登录
+ * 知识点：网络收发都交给ChatClient，这里只负责读取控制台输入和打印结果
  */
 public class Client {
     private static Scanner scanner = new Scanner(System.in);
-    private static Socket socket;  // 客户端套接字
-    private static BufferedReader reader;  // 输入流
-    private static PrintWriter writer;  // 输出流
+    private static ChatClient client;  // 与服务器的连接
     private static String currentUsername;  // 当前登录的用户名
 
 
@@ -67,34 +65,36 @@ public class Client {
      * 作用：建立与服务器的TCP连接
      * @return 连接是否成功
      * 知识点：
-     * 1. Socket - 客户端套接字，用于连接服务器
+     * 1. ChatClient - 异步客户端，connect返回Future，这里用join等待连接完成
      * 2. 异常处理 - 处理连接异常
-     * 3. 输入输出流 - 创建读写流
+     * 3. 监听器 - 房间消息等由ChatClient的I/O线程回调打印
      */
     private static boolean connectToServer() {
         try {
-            // 创建客户端套接字，连接到服务器
-            socket = new Socket("localhost", 8888);
-            // 创建输入输出流
-            /**
-             socket.getInputStream()：从 Socket 对象获取字节输入流，用于读取来自网络连接的字节数据
-             InputStreamReader：将字节流转换为字符流（处理字符编码转换）
-             BufferedReader：提供缓冲功能的字符读取器，能高效地读取文本数据，还提供了readLine()等方便的方法读取整行文本
-             整体作用：创建一个高效的字符输入流，用于读取从 Socket 连接中传来的文本数据
-             */
-            reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-            /**
-             socket.getOutputStream()：从 Socket 对象获取字节输出流，用于向网络连接写入字节数据
-             PrintWriter：字符输出流，提供了print()、println()等方便的方法写入各种类型的数据
-             构造方法中的true参数：表示启用自动刷新功能，调用println()后会自动刷新缓冲区，无需手动调用flush()
-             整体作用：创建一个方便的字符输出流，用于向 Socket 连接中写入文本数据
-             */
-            writer = new PrintWriter(socket.getOutputStream(), true);
-            System.out.println("已连接到服务器");
+            // 连接服务器，收到的不是请求响应的消息（聊天、私聊、通知）直接打印
+            client = ChatClient.connect("localhost", 8888).join();
+            client.addListener(new ChatClient.Listener() {
+                @Override
+                public void onMessage(String line) {
+                    System.out.println(line);
+                }
+
+                @Override
+                public void onClosed(Throwable cause) {
+                    if (cause != null) {
+                        System.out.println("与服务器的连接已断开：" + cause.getMessage());
+                    }
+                }
+            });
+            // 长消息（贴出的日志、长文本）压缩传输，服务器不支持时照常使用
+            if (client.negotiateCompression().join()) {
+                System.out.println("已连接到服务器（已开启压缩）");
+            } else {
+                System.out.println("已连接到服务器");
+            }
             return true;
-        } catch (IOException e) {
-            System.out.println("连接服务器失败：" + e.getMessage());
+        } catch (CompletionException e) {
+            System.out.println("连接服务器失败：" + e.getCause().getMessage());
             return false;
         }
     }
@@ -117,13 +117,9 @@ public class Client {
         System.out.println("请输入（3-8位，第一位字母，后面数字）:");
         String password = scanner.nextLine().trim();
 
-        // 发送注册请求到服务器
-        String message = "REGISTER:username=" + username + "&password=" + password;
-        writer.println(message);
-
+        // 发送注册请求到服务器，等待响应
         try {
-            // 接收服务器响应
-            String response = reader.readLine();
+            String response = client.register(username, password).join();
             System.out.println(response);
 
             if (response.equals("注册成功！")) {
@@ -131,8 +127,8 @@ public class Client {
                 System.out.println("注册成功，可以开始聊天了！");
                 startChat();
             }
-        } catch (IOException e) {
-            System.out.println("接收服务器响应失败：" + e.getMessage());
+        } catch (CompletionException e) {
+            System.out.println("接收服务器响应失败：" + e.getCause().getMessage());
         }
     }
 
@@ -156,13 +152,9 @@ public class Client {
         System.out.print("请输入密码：");
         String password = scanner.nextLine().trim();
 
-        // 发送登录请求到服务器
-        String message = "LOGIN:username=" + username + "&password=" + password;
-        writer.println(message);
-
+        // 发送登录请求到服务器，等待响应
         try {
-            // 接收服务器响应
-            String response = reader.readLine();
+            String response = client.login(username, password).join();
             System.out.println(response);
 
             if (response.startsWith("登录成功")) {
@@ -170,8 +162,8 @@ public class Client {
                 System.out.println("登录成功，可以开始聊天了！");
                 startChat();
             }
-        } catch (IOException e) {
-            System.out.println("接收服务器响应失败：" + e.getMessage());
+        } catch (CompletionException e) {
+            System.out.println("接收服务器响应失败：" + e.getCause().getMessage());
         }
     }
 
@@ -179,25 +171,17 @@ public class Client {
      * 开始聊天
      * 作用：处理聊天功能
      * 知识点：
-     * 1. 多线程 - 创建接收消息的线程
+     * 1. 异步请求 - 命令发出后不等待响应，响应到达时由I/O线程打印
      * 2. 用户输入 - 处理用户输入的聊天消息
      */
     private static void startChat() {
         System.out.println("\n=== 进入聊天室 ===");
-        System.out.println("输入消息开始聊天，输入 'exit' 退出聊天");
-
-        // 创建接收消息的线程
-        Thread receiveThread = new Thread(() -> {
-            try {
-                String message;
-                while ((message = reader.readLine()) != null) {
-                    System.out.println(message);
-                }
-            } catch (IOException e) {
-                System.out.println("接收消息失败：" + e.getMessage());
-            }
-        });
-        receiveThread.start();
+        System.out.println("输入消息开始聊天，输入 '/exit' 退出聊天");
+        System.out.println("命令：/users 在线用户，/rooms 房间列表，/join 房间名 加入房间，/leave 回到大厅，/msg 用户名 消息 私聊，"
+                + "/offset 当前消息偏移量，/resume 偏移量 重放错过的消息，"
+                + "/watch 订阅上下线通知，/unwatch 取消订阅");
+
+        // 收到的消息由ChatClient的监听器打印，不再需要单独的接收线程
 
         // 主线程处理用户输入
         String input;
@@ -209,13 +193,41 @@ public class Client {
                 if ("/exit".equals(input)) {
                     break;
                 } else if ("/users".equals(input)) {
-                    writer.println("GET_USERS");
+                    client.listUsers().whenComplete((users, error) ->
+                            printReply(error == null ? "在线用户：" + String.join(" ", users) : null, error));
+                } else if (input.startsWith("/join ")) {
+                    // 加入房间：/join 房间名
+                    printReply(client.joinRoom(input.substring(6).trim()));
+                } else if ("/leave".equals(input)) {
+                    printReply(client.leaveRoom());
+                } else if ("/rooms".equals(input)) {
+                    printReply(client.listRooms());
+                } else if ("/watch".equals(input) || "/unwatch".equals(input)) {
+                    // 订阅或取消订阅用户上线、下线通知
+                    printReply(client.watchPresence("/watch".equals(input)));
+                } else if ("/offset".equals(input)) {
+                    printReply(client.offset());
+                } else if (input.startsWith("/resume ")) {
+                    // 重放：/resume 偏移量，重放当前房间从该偏移量开始的消息
+                    try {
+                        printReply(client.resume(Long.parseLong(input.substring(8).trim())));
+                    } catch (NumberFormatException e) {
+                        System.out.println("用法：/resume 偏移量");
+                    }
+                } else if (input.startsWith("/msg ")) {
+                    // 私聊：/msg 用户名 消息内容
+                    String[] parts = input.substring(5).trim().split(" ", 2);
+                    if (parts.length == 2 && !parts[1].isBlank()) {
+                        client.sendDirect(parts[0], parts[1]);
+                    } else {
+                        System.out.println("用法：/msg 用户名 消息内容");
+                    }
                 } else {
                     System.out.println("未知命令：" + input);
                 }
             } else if (!input.isEmpty()) {
                 // 发送聊天消息
-                writer.println(input);
+                client.send(input);
             }
         }
 
@@ -223,17 +235,29 @@ public class Client {
         closeConnection();
     }
 
+    /**
+     * 响应到达后打印
+     * @param reply 请求的响应
+     */
+    private static void printReply(CompletableFuture<String> reply) {
+        reply.whenComplete(Client::printReply);
+    }
+
+    private static void printReply(String reply, Throwable error) {
+        if (error != null) {
+            System.out.println("请求失败：" + error.getMessage());
+        } else {
+            System.out.println(reply);
+        }
+    }
+
     /**
      * 关闭连接
      * 作用：清理资源，关闭连接
      */
     private static void closeConnection() {
-        try {
-            if (reader != null) reader.close();
-            if (writer != null) writer.close();
-            if (socket != null) socket.close();
-        } catch (IOException e) {
-            System.out.println("关闭连接时出错：" + e.getMessage());
+        if (client != null) {
+            client.close();
         }
     }
 
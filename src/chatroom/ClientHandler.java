@@ -0,0 +1,305 @@
+package chatroom;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ClientHandler类 - 客户端处理任务类
+ * 作用：为每个客户端处理消息收发，由Server放到平台线程或虚拟线程上运行
+ * 知识点：
+ * 1. 实现Runnable - 任务和线程分离，同一个任务可以交给不同类型的线程执行
+ * 2. Socket通信 - 处理网络通信
+ * 3. 输入输出流 - 读写数据
+ * 4. 异常处理 - 处理网络异常
+ * 5. 实现ChatSession接口 - 消息处理逻辑见MessageHandler
+ * 6. 读写分离 - run()所在线程只负责读，发送的消息先进入有界队列OutboundQueue，
+ *    由单独的写线程写出，广播的发送者不会被慢客户端阻塞
+ * 7. 合并写出 - 写线程一次取出队列中的多条消息写入缓冲区，队列取空或缓冲区写满时才写一次socket
+ * 8. 心跳 - 读线程阻塞在readLine上发现不了半开的连接，由Heartbeat在空闲时发送PING，超时后关闭socket
+ */
+public final class ClientHandler implements Runnable, ChatSession {
+    private Socket clientSocket;  // 客户端套接字
+    private BufferedReader reader;  // 输入流，用于读取客户端消息
+    private OutputStream writer;  // 输出流，只由写线程使用，直接写出已编码的字节
+    private final OutboundQueue<EncodedMessage> outbound = new OutboundQueue<>();  // 待发送的消息
+    private Thread writerThread;  // 写线程
+    private volatile String room;  // 当前所在房间
+    private volatile String username;  // 当前客户端的用户名
+    private volatile boolean isConnected = true;  // 连接状态
+    private final AtomicBoolean closed = new AtomicBoolean();  // 资源是否已清理
+    private final Heartbeat heartbeat;  // 心跳和超时检查
+    private final RateLimiter rateLimiter;  // 发送速率和登录失败次数限制
+    private volatile boolean compress;  // 是否已协商压缩
+
+    public ClientHandler(Socket socket) {
+        this.clientSocket = socket;
+        this.rateLimiter = new RateLimiter(socket.getInetAddress().getHostAddress());
+        try {
+            // 创建输入输出流
+            this.reader = new BufferedReader(new InputStreamReader(countReads(socket.getInputStream()),
+                    StandardCharsets.UTF_8));
+            socket.setTcpNoDelay(ServerConfig.TCP_NODELAY);
+            this.writer = new BufferedOutputStream(countWrites(socket.getOutputStream()),
+                    ServerConfig.WRITE_BUFFER_BYTES);
+        } catch (IOException e) {
+            Log.warn("创建客户端处理线程失败：" + e.getMessage());
+        }
+        this.heartbeat = Heartbeat.watch(this, this::disconnect);
+    }
+
+    /**
+     * 任务运行方法
+     * 作用：启动写线程，然后在当前线程中读取客户端消息
+     * 知识点：
+     * 1. 实现run方法 - 定义线程要执行的任务
+     * 2. 无限循环 - 持续监听客户端消息
+     * 3. 字符串处理 - 解析客户端发送的消息格式
+     */
+    @Override
+    public void run() {
+        writerThread = ServerConfig.threadBuilder().name("writer-" + Thread.currentThread().getName())
+                .start(this::writeLoop);
+        try {
+            String message;
+            // 持续监听客户端消息
+            while (isConnected && (message = readLine()) != null) {
+                heartbeat.touch();
+                Log.debug("收到客户端消息：", message);
+
+                // 处理不同类型的消息（注册、登录、聊天），逻辑与NIO模式共用
+                // 登录和注册在认证线程池中执行，这里等待完成后再读下一条，保证顺序
+                MessageHandler.handleMessage(this, message).join();
+            }
+        } catch (IOException e) {
+            if (isConnected) {
+                Log.warn("客户端连接异常：" + e.getMessage());
+            }
+        } finally {
+            // 清理资源
+            closeConnection();
+        }
+    }
+
+    /**
+     * 读取一行消息
+     * 作用：和BufferedReader.readLine一样识别\n和\r\n，但限制一行的长度，
+     *      客户端一直不发换行符时不会无限占用内存，也不会产生超长的聊天消息（和NIO模式的限制相同）
+     * @return 一行消息（不包含换行符），连接关闭时返回null
+     * @throws IOException 读取失败或一行超过ProtocolCodec.MAX_LINE_LENGTH
+     */
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = reader.read()) >= 0) {
+            if (c == '\n') {
+                int end = line.length();
+                return end > 0 && line.charAt(end - 1) == '\r' ? line.substring(0, end - 1) : line.toString();
+            }
+            if (line.length() >= ProtocolCodec.MAX_LINE_LENGTH) {
+                throw new IOException("客户端消息过长");
+            }
+            line.append((char) c);
+        }
+        return line.length() > 0 ? line.toString() : null;
+    }
+
+    /**
+     * 包装socket输入流，统计读到的字节数
+     * @param in socket输入流
+     * @return 包装后的输入流
+     */
+    private static InputStream countReads(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = in.read(b, off, len);
+                if (n > 0) {
+                    ServerMetrics.bytesRead(n);
+                }
+                return n;
+            }
+        };
+    }
+
+    /**
+     * 包装socket输出流，统计真正写socket的次数
+     * @param out socket输出流
+     * @return 包装后的输出流
+     */
+    private static OutputStream countWrites(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                WriteStats.recordWrite(len);
+            }
+        };
+    }
+
+    /**
+     * 写线程循环
+     * 作用：不断从发送队列取出消息写给客户端，队列为空时阻塞等待；
+     *      每次把队列中已有的消息一起写入缓冲区，队列取空后才flush，
+     *      繁忙时多条消息合并成一次系统调用和更少的TCP报文
+     */
+    private void writeLoop() {
+        List<EncodedMessage> batch = new ArrayList<>(ServerConfig.WRITE_BATCH);
+        try {
+            while (isConnected) {
+                batch.add(outbound.take());
+                outbound.drainTo(batch, ServerConfig.WRITE_BATCH - 1);
+                for (EncodedMessage message : batch) {
+                    // 缓冲区写满时BufferedOutputStream会自己先写出一次
+                    message.writeTo(writer);
+                }
+                WriteStats.recordMessages(batch.size());
+                if (outbound.isEmpty()) {
+                    writer.flush();
+                }
+                long now = System.nanoTime();
+                for (EncodedMessage message : batch) {
+                    message.recordDelivered(now);
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // 连接关闭时被中断，正常退出
+        } catch (IOException e) {
+            // 写失败（客户端已断开），关闭socket让读线程退出
+            disconnect();
+        }
+    }
+
+    /**
+     * 发送消息给客户端
+     * 作用：把已编码的消息放入发送队列后立即返回，不等待真正写出
+     * 知识点：队列满时按配置的慢消费者策略丢弃消息或断开客户端
+     * @param message 已编码的消息
+     */
+    @Override
+    public void sendEncoded(EncodedMessage message) {
+        if (!isConnected) {
+            return;
+        }
+        if (compress) {
+            message = message.compressed();
+        }
+        if (!outbound.offer(message)) {
+            Log.warn("客户端 " + username + " 接收过慢，发送队列已满，断开连接");
+            disconnect();
+        }
+    }
+
+    /**
+     * 断开连接
+     * 作用：可以在任意线程调用，关闭socket后读线程的readLine会立即返回，
+     *      由读线程在closeConnection中完成清理
+     */
+    private void disconnect() {
+        isConnected = false;
+        try {
+            clientSocket.close();
+        } catch (IOException e) {
+            Log.warn("关闭连接时出错：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 关闭连接
+     * 作用：清理资源，关闭连接
+     * 知识点：
+     * 1. 资源管理 - 关闭输入输出流和套接字，停止写线程
+     * 2. 异常处理 - 处理关闭资源时可能出现的异常
+     * 3. AtomicBoolean - 保证清理只执行一次
+     */
+    private void closeConnection() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        isConnected = false;
+        heartbeat.cancel();
+        if (writerThread != null) {
+            writerThread.interrupt();
+        }
+        outbound.clear();
+        try {
+            // 先关闭socket，让可能阻塞在写操作上的写线程立即失败返回
+            if (clientSocket != null) clientSocket.close();
+            if (reader != null) reader.close();
+            if (writer != null) writer.close();
+        } catch (IOException e) {
+            Log.warn("关闭连接时出错：" + e.getMessage());
+        } finally {
+            // 从服务器客户端列表中移除
+            Server.removeClient(this);
+        }
+    }
+
+    /**
+     * 获取连接状态
+     * @return 是否已连接
+     */
+    @Override
+    public boolean isConnected() {
+        return isConnected;
+    }
+
+    /**
+     * 获取发送队列中等待写出的消息数
+     * @return 队列长度
+     */
+    @Override
+    public int getOutboundQueueSize() {
+        return outbound.size();
+    }
+
+    @Override
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    @Override
+    public boolean enableCompression() {
+        compress = true;
+        return true;
+    }
+
+    /**
+     * 获取用户名
+     * @return 用户名
+     */
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * 设置用户名
+     * @param username 用户名
+     */
+    @Override
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    @Override
+    public String getRoom() {
+        return room;
+    }
+
+    @Override
+    public void setRoom(String room) {
+        this.room = room;
+    }
+}
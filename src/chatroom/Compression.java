@@ -0,0 +1,119 @@
+package chatroom;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression类 - 消息压缩
+ * 作用：客户端连接后发送 HELLO:compress=deflate 协商压缩，服务器同意后，
+ *      发给这个连接的长消息改为发送 "Z:" + Base64(deflate(原消息)) 这样的一行，客户端收到后还原；
+ *      服务器和客户端共用这里的编码和解码
+ * 知识点：
+ * 1. Deflater/Inflater - JDK自带的zlib压缩，不需要额外依赖；用原始deflate格式（nowrap），省掉zlib头和校验和
+ * 2. Base64 - 压缩结果是任意字节，编码成文本后仍然是一行，不破坏按换行符分隔的协议
+ * 3. 阈值 - 短消息压缩后加上Base64的膨胀反而更长，小于 compression.threshold 字节的消息不压缩，
+ *    压缩后没有变短的消息也照原样发送
+ * 4. 只压缩一次 - 压缩结果缓存在EncodedMessage中，广播给多少个接收者都只压缩一次
+ */
+public class Compression {
+    /** 协商压缩时使用的算法名 */
+    public static final String DEFLATE = "deflate";
+    /** 压缩消息的前缀 */
+    public static final String PREFIX = "Z:";
+
+    private static final LongAdder compressed = new LongAdder();  // 压缩过的消息数（每条广播只算一次）
+    private static final LongAdder skipped = new LongAdder();  // 压缩后没有变短、照原样发送的消息数
+    private static final LongAdder originalBytes = new LongAdder();  // 压缩前的字节数
+    private static final LongAdder compressedBytes = new LongAdder();  // 压缩后的字节数
+
+    /**
+     * 压缩一行消息
+     * @param line 原消息的UTF-8字节（包含换行符）
+     * @return 压缩后的一行（"Z:"开头，包含换行符）；不够长或压缩后没有变短时返回null
+     */
+    public static byte[] deflate(byte[] line) {
+        if (line.length < ServerConfig.COMPRESSION_THRESHOLD) {
+            return null;
+        }
+        Deflater deflater = new Deflater(ServerConfig.COMPRESSION_LEVEL, true);
+        byte[] packed;
+        try {
+            deflater.setInput(line, 0, line.length - 1);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(line.length / 2);
+            byte[] chunk = new byte[Math.min(line.length, 8192)];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            packed = out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+        byte[] encoded = Base64.getEncoder().encode(packed);
+        if (PREFIX.length() + encoded.length + 1 >= line.length) {
+            skipped.increment();
+            return null;
+        }
+        byte[] result = new byte[PREFIX.length() + encoded.length + 1];
+        System.arraycopy(PREFIX.getBytes(StandardCharsets.US_ASCII), 0, result, 0, PREFIX.length());
+        System.arraycopy(encoded, 0, result, PREFIX.length(), encoded.length);
+        result[result.length - 1] = '\n';
+        compressed.increment();
+        originalBytes.add(line.length);
+        compressedBytes.add(result.length);
+        return result;
+    }
+
+    /**
+     * 还原一行压缩的消息
+     * @param line 收到的一行（"Z:"开头，不包含换行符）
+     * @return 原消息（不包含换行符）
+     * @throws DataFormatException 数据损坏
+     */
+    public static String inflate(String line) throws DataFormatException {
+        byte[] packed;
+        try {
+            packed = Base64.getDecoder().decode(line.substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new DataFormatException("压缩消息不是有效的Base64");
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(packed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(packed.length * 4);
+            byte[] chunk = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(chunk);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("压缩消息不完整");
+                }
+                out.write(chunk, 0, count);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    public static long getCompressed() {
+        return compressed.sum();
+    }
+
+    public static long getSkipped() {
+        return skipped.sum();
+    }
+
+    /**
+     * 压缩率
+     * @return 压缩后字节数 / 压缩前字节数，没有压缩过消息时为1
+     */
+    public static double getRatio() {
+        long original = originalBytes.sum();
+        return original == 0 ? 1.0 : (double) compressedBytes.sum() / original;
+    }
+}
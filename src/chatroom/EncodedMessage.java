@@ -0,0 +1,133 @@
+package chatroom;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * EncodedMessage类 - 已编码的消息
+ * 作用：把一行消息（含换行符）一次性编码成UTF-8字节，之后只读共享。
+ *      广播时所有接收者拿到的是同一个对象，不再为每个接收者重复编码字符串
+ * 知识点：
+ * 1. 不可变对象 - 创建后内容不再改变，多线程共享不需要加锁
+ * 2. 直接缓冲区 - 广播的消息（shared）allocateDirect分配在堆外，SocketChannel写出时不需要再复制一次，
+ *    分配成本由所有接收者分摊；只发给一个会话的回复直接包装字节数组，不值得分配堆外内存
+ * 3. duplicate - 共享同一块内存，但每个接收者有独立的position/limit
+ * 4. 创建时间 - 记录编码的时间，写入socket时统计消息送达的延迟（见ServerMetrics）
+ * 5. 延迟压缩 - 第一个协商了压缩的接收者需要时才压缩（见Compression），结果缓存下来给其他接收者共用
+ */
+public final class EncodedMessage {
+    private final byte[] bytes;  // UTF-8编码后的字节（包含换行符），不对外暴露
+    private volatile ByteBuffer direct;  // 只读直接缓冲区，广播的消息第一次需要时创建
+    private final long createdNanos;  // 编码时间，0表示不统计送达延迟
+    private final boolean shared;  // 是否会发给多个会话
+    private volatile EncodedMessage compressed;  // 压缩后的消息，不需要压缩时是自己，第一次需要时创建
+
+    private EncodedMessage(byte[] bytes, long createdNanos, boolean shared) {
+        this.bytes = bytes;
+        this.createdNanos = createdNanos;
+        this.shared = shared;
+    }
+
+    /**
+     * 编码一行只发给一个会话的消息（请求的回复、私聊）
+     * @param line 消息内容（不包含换行符）
+     * @return 编码后的消息
+     */
+    public static EncodedMessage of(String line) {
+        return new EncodedMessage((line + "\n").getBytes(StandardCharsets.UTF_8), System.nanoTime(), false);
+    }
+
+    /**
+     * 编码一行广播给多个会话的消息
+     * 作用：NIO模式下写出时使用所有接收者共用的直接缓冲区
+     * @param line 消息内容（不包含换行符）
+     * @return 编码后的消息
+     */
+    public static EncodedMessage shared(String line) {
+        return new EncodedMessage((line + "\n").getBytes(StandardCharsets.UTF_8), System.nanoTime(), true);
+    }
+
+    /**
+     * 重放用的副本
+     * 作用：共享同一份字节，但不统计送达延迟，避免很久以前的历史消息拉高延迟统计；
+     *      每次重放只发给一个会话，不分配直接缓冲区
+     * @return 副本
+     */
+    public EncodedMessage replayed() {
+        return new EncodedMessage(bytes, 0, false);
+    }
+
+    /**
+     * 获取压缩后的消息
+     * 作用：发给协商了压缩的会话时使用；消息太短或压缩后没有变短时返回自己
+     * @return 压缩后的消息（送达延迟从原消息的编码时间算起）
+     */
+    public EncodedMessage compressed() {
+        EncodedMessage result = compressed;
+        if (result == null) {
+            // 并发时最多多压缩一次，结果相同，不影响正确性
+            byte[] packed = Compression.deflate(bytes);
+            compressed = result = packed == null ? this : new EncodedMessage(packed, createdNanos, shared);
+        }
+        return result;
+    }
+
+    /**
+     * 记录送达延迟
+     * 作用：消息写入socket后由写线程（或Selector线程）调用
+     * @param nowNanos 当前时间
+     */
+    public void recordDelivered(long nowNanos) {
+        if (createdNanos != 0) {
+            ServerMetrics.DELIVERY.record(nowNanos - createdNanos);
+        }
+    }
+
+    /**
+     * 写入输出流
+     * 作用：阻塞模式下ClientHandler的写线程使用
+     * @param out 输出流
+     * @throws IOException 写入失败
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes);
+    }
+
+    /**
+     * 获取一个可以独立读取的缓冲区
+     * 作用：NIO模式下写入SocketChannel使用；广播的消息返回的缓冲区和其他接收者共享同一块堆外内存，
+     *      但读取位置互不影响，只发给一个会话的消息直接包装字节数组
+     * @return 只读缓冲区
+     */
+    public ByteBuffer buffer() {
+        if (!shared) {
+            return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        }
+        ByteBuffer buffer = direct;
+        if (buffer == null) {
+            // 并发时最多多分配一次，结果相同，不影响正确性
+            ByteBuffer created = ByteBuffer.allocateDirect(bytes.length);
+            created.put(bytes).flip();
+            direct = buffer = created.asReadOnlyBuffer();
+        }
+        return buffer.duplicate();
+    }
+
+    /**
+     * 获取编码后的字节数
+     * @return 字节数（包含换行符）
+     */
+    public int length() {
+        return bytes.length;
+    }
+
+    /**
+     * 解码为字符串（不含换行符），用于日志和调试
+     */
+    @Override
+    public String toString() {
+        return new String(bytes, 0, bytes.length - 1, StandardCharsets.UTF_8);
+    }
+}
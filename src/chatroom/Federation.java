@@ -0,0 +1,325 @@
+package chatroom;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Federation类 - 多节点联邦
+ * 作用：让多个Server进程组成一个聊天室：节点之间通过普通的聊天端口建立服务器间连接，
+ *      互相转发房间消息、用户上下线、私聊和新注册的用户，每个节点只需要管理自己的客户端
+ * 服务器间消息（一行一条，格式同ProtocolCodec）：
+ *      FED_HELLO:node=A&secret=xxx             握手，双方各发一次
+ *      FED_RELAY:id=...&room=lobby&text=...    房间消息
+ *      FED_PRESENCE:id=...&node=A&user=x&state=online|offline  用户上下线
+ *      FED_DM:id=...&from=x&to=y&text=...      私聊
+ *      FED_USER:id=...&node=A&user=x&credential=...&upgrade=true|false   用户记录（注册或密码升级）
+ * 知识点：
+ * 1. 泛洪转发 - 收到新消息后转发给其他所有节点，节点之间不需要两两直连
+ * 2. 去重 - 每条消息带有 来源节点-启动时间-序号 的唯一编号，用并发集合记录最近见过的编号（按先后顺序淘汰最旧的，不加锁），
+ *    同一条消息从多条路径到达时只处理一次，也不会在节点之间无限循环
+ * 3. 最终一致 - 用户记录异步同步，注册成功后其他节点稍后才能登录；两个节点同时注册同一个用户名时
+ *    不选出赢家，各节点保留先收到的记录，冲突记入日志和STATS，并通知在线的本节点用户
+ */
+public class Federation {
+    private static final int SEEN_CAPACITY = 10000;  // 去重记录的容量
+
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36);  // 本次启动的标识，重启后编号不会和旧消息重复
+    private static final AtomicLong sequence = new AtomicLong();  // 本节点消息序号
+    private static final LongAdder userConflicts = new LongAdder();  // 同名注册冲突次数
+    private static final Map<ChatSession, String> peers = new ConcurrentHashMap<>();  // 已握手的服务器间连接 -> 对方节点
+    private static final ConcurrentHashMap<String, String> remoteUsers = new ConcurrentHashMap<>();  // 其他节点的在线用户 -> 所在节点
+    private static final Set<String> seen = ConcurrentHashMap.newKeySet();  // 最近见过的消息编号
+    private static final ConcurrentLinkedQueue<String> seenOrder = new ConcurrentLinkedQueue<>();  // 见过的编号，按先后顺序淘汰
+    private static final AtomicInteger seenCount = new AtomicInteger();  // seenOrder中的编号数
+
+    /**
+     * 启动联邦
+     * 作用：按配置连接其他节点，没有配置时什么也不做
+     * @throws IllegalStateException 配置了其他节点但没有设置共享密钥
+     */
+    public static void start() {
+        if (!ServerConfig.FEDERATION_PEERS.isBlank() && ServerConfig.FEDERATION_SECRET.isBlank()) {
+            throw new IllegalStateException("配置了 federation.peers 但没有设置 federation.secret，拒绝开启联邦模式");
+        }
+        if (!ServerConfig.isFederationEnabled()) {
+            return;
+        }
+        for (String peer : ServerConfig.FEDERATION_PEERS.split(",")) {
+            peer = peer.trim();
+            int colon = peer.lastIndexOf(':');
+            if (colon <= 0) {
+                Log.info("忽略无法识别的联邦节点地址：" + peer);
+                continue;
+            }
+            new FederationLink(peer.substring(0, colon), Integer.parseInt(peer.substring(colon + 1))).start();
+        }
+        Log.info("联邦模式已开启，本节点：" + ServerConfig.NODE_ID + "，连接节点：" + ServerConfig.FEDERATION_PEERS);
+    }
+
+    /**
+     * 握手消息
+     * @return FED_HELLO消息
+     */
+    static String hello() {
+        return ProtocolCodec.encode(ProtocolCodec.Command.FED_HELLO,
+                "node", ServerConfig.NODE_ID, "secret", ServerConfig.FEDERATION_SECRET);
+    }
+
+    /**
+     * 处理服务器间消息
+     * @param session 收到消息的连接
+     * @param message 消息
+     * @param command 已识别的命令
+     * @return 已完成的Future（服务器间消息都同步处理）
+     */
+    public static CompletableFuture<Void> handleFrame(ChatSession session, String message,
+                                                     ProtocolCodec.Command command) {
+        if (!ServerConfig.isFederationEnabled()) {
+            session.sendMessage("联邦模式未开启");
+        } else if (command == ProtocolCodec.Command.FED_HELLO) {
+            handleHello(session, message, command);
+        } else if (peers.containsKey(session)) {
+            String id = ProtocolCodec.field(message, command, "id");
+            if (id != null && firstSeen(id)) {
+                handleNew(session, message, command);
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * 处理握手
+     * 作用：校验共享密钥，记录对方节点；被连接的一方回复自己的握手消息，然后双方同步在线用户
+     */
+    private static void handleHello(ChatSession session, String message, ProtocolCodec.Command command) {
+        String node = ProtocolCodec.field(message, command, "node");
+        String secret = ProtocolCodec.field(message, command, "secret");
+        if (node == null || secret == null || secret.isEmpty() || node.equals(ServerConfig.NODE_ID)
+                || !MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8),
+                ServerConfig.FEDERATION_SECRET.getBytes(StandardCharsets.UTF_8))) {
+            Log.warn("拒绝联邦节点握手：" + node);
+            session.sendMessage("联邦握手失败");
+            return;
+        }
+        if (peers.put(session, node) != null) {
+            return;
+        }
+        if (!(session instanceof FederationLink)) {
+            session.sendMessage(hello());
+        }
+        Log.info("联邦节点已连接：" + node);
+        for (String username : Server.localUsernames()) {
+            session.sendMessage(presenceFrame(username, true));
+        }
+    }
+
+    /**
+     * 处理第一次见到的消息：在本节点生效，再转发给其他节点
+     */
+    private static void handleNew(ChatSession from, String message, ProtocolCodec.Command command) {
+        switch (command) {
+            case FED_RELAY:
+                String room = ProtocolCodec.field(message, command, "room");
+                String text = ProtocolCodec.field(message, command, "text");
+                if (room != null && text != null) {
+                    Server.deliverToRoom(room, text, null);
+                }
+                break;
+            case FED_PRESENCE:
+                String node = ProtocolCodec.field(message, command, "node");
+                String user = ProtocolCodec.field(message, command, "user");
+                if (node != null && user != null) {
+                    if ("online".equals(ProtocolCodec.field(message, command, "state"))) {
+                        if (remoteUsers.put(user, node) == null) {
+                            Server.getPresence().online(user);
+                        }
+                    } else if (remoteUsers.remove(user, node)) {
+                        Server.getPresence().offline(user);
+                    }
+                }
+                break;
+            case FED_DM:
+                String to = ProtocolCodec.field(message, command, "to");
+                Collection<ChatSession> targets = Server.findClients(to);
+                if (!targets.isEmpty()) {
+                    EncodedMessage dm = EncodedMessage.of("[私聊][" + ProtocolCodec.field(message, command, "from")
+                            + "]: " + ProtocolCodec.field(message, command, "text"));
+                    for (ChatSession target : targets) {
+                        target.sendEncoded(dm);
+                    }
+                    return;  // 已送达，不再转发
+                }
+                break;
+            case FED_USER:
+                String username = ProtocolCodec.field(message, command, "user");
+                if (!UserManager.applyReplicated(username, ProtocolCodec.field(message, command, "credential"),
+                        "true".equals(ProtocolCodec.field(message, command, "upgrade")))) {
+                    reportConflict(username, ProtocolCodec.field(message, command, "node"));
+                }
+                break;
+            default:
+                return;
+        }
+        sendToPeers(EncodedMessage.shared(message), from);
+    }
+
+    /**
+     * 转发房间消息到其他节点
+     * @param room 房间名
+     * @param text 消息内容
+     */
+    public static void relayRoom(String room, String text) {
+        if (!peers.isEmpty()) {
+            publish(ProtocolCodec.Command.FED_RELAY, "room", room, "text", text);
+        }
+    }
+
+    /**
+     * 通知其他节点本节点用户上线或下线
+     * @param username 用户名
+     * @param online 是否上线
+     */
+    public static void presence(String username, boolean online) {
+        if (!peers.isEmpty()) {
+            String frame = presenceFrame(username, online);
+            sendToPeers(EncodedMessage.shared(frame), null);
+        }
+    }
+
+    /**
+     * 判断连接是否是已握手的服务器间连接
+     * @param session 连接
+     * @return 是服务器间连接时返回true
+     */
+    public static boolean isPeer(ChatSession session) {
+        return peers.containsKey(session);
+    }
+
+    /**
+     * 发送私聊给其他节点上的用户
+     * @param from 发送者
+     * @param to 接收者
+     * @param text 消息内容
+     * @return 接收者不在任何节点上时返回false
+     */
+    public static boolean directMessage(String from, String to, String text) {
+        if (!remoteUsers.containsKey(to)) {
+            return false;
+        }
+        publish(ProtocolCodec.Command.FED_DM, "from", from, "to", to, "text", text);
+        return true;
+    }
+
+    /**
+     * 把用户记录同步给其他节点
+     * @param username 用户名
+     * @param credential 凭证
+     * @param upgrade 是否是明文密码升级（否则是新注册）
+     */
+    public static void publishUser(String username, String credential, boolean upgrade) {
+        if (!peers.isEmpty()) {
+            publish(ProtocolCodec.Command.FED_USER, "node", ServerConfig.NODE_ID, "user", username,
+                    "credential", credential, "upgrade", String.valueOf(upgrade));
+        }
+    }
+
+    public static long getUserConflicts() {
+        return userConflicts.sum();
+    }
+
+    /**
+     * 报告同名注册冲突
+     * 作用：记入日志和计数，用户在本节点在线时提醒他，由管理员处理
+     */
+    private static void reportConflict(String username, String node) {
+        userConflicts.increment();
+        Log.warn("用户名 " + username + " 同时在节点 " + node + " 上注册，保留本节点的记录，需要管理员处理");
+        for (ChatSession local : Server.findClients(username)) {
+            local.sendMessage("注意：用户名 " + username + " 同时在其他节点上被注册，你的账号目前只能在本节点登录，请联系管理员");
+        }
+    }
+
+    /**
+     * 连接关闭
+     * 作用：服务器间连接断开且和该节点已经没有其他连接时，移除该节点的在线用户
+     * @param session 关闭的连接
+     */
+    public static void sessionClosed(ChatSession session) {
+        String node = peers.remove(session);
+        if (node == null || peers.containsValue(node)) {
+            return;
+        }
+        for (Map.Entry<String, String> entry : remoteUsers.entrySet()) {
+            if (entry.getValue().equals(node) && remoteUsers.remove(entry.getKey(), node)) {
+                Server.getPresence().offline(entry.getKey());
+            }
+        }
+        Log.warn("联邦节点已断开：" + node);
+    }
+
+    /**
+     * 生成一条带编号的消息并发给所有节点
+     */
+    private static void publish(ProtocolCodec.Command command, String... keyValues) {
+        String id = nextId();
+        firstSeen(id);
+        String[] fields = new String[keyValues.length + 2];
+        fields[0] = "id";
+        fields[1] = id;
+        System.arraycopy(keyValues, 0, fields, 2, keyValues.length);
+        sendToPeers(EncodedMessage.shared(ProtocolCodec.encode(command, fields)), null);
+    }
+
+    private static String presenceFrame(String username, boolean online) {
+        String id = nextId();
+        firstSeen(id);
+        return ProtocolCodec.encode(ProtocolCodec.Command.FED_PRESENCE, "id", id,
+                "node", ServerConfig.NODE_ID, "user", username, "state", online ? "online" : "offline");
+    }
+
+    /**
+     * 发给所有已握手的节点
+     * @param frame 已编码的消息
+     * @param except 不发给这个连接（消息的来源），可以为null
+     */
+    private static void sendToPeers(EncodedMessage frame, ChatSession except) {
+        for (ChatSession peer : peers.keySet()) {
+            if (peer != except && peer.isConnected()) {
+                peer.sendEncoded(frame);
+            }
+        }
+    }
+
+    private static String nextId() {
+        return ServerConfig.NODE_ID + "-" + EPOCH + "-" + sequence.incrementAndGet();
+    }
+
+    /**
+     * 记录消息编号
+     * 作用：超过容量时淘汰最早记录的编号；并发时容量可能短暂多出几个，不影响去重
+     * @return 第一次见到时返回true
+     */
+    private static boolean firstSeen(String id) {
+        if (!seen.add(id)) {
+            return false;
+        }
+        seenOrder.add(id);
+        if (seenCount.incrementAndGet() > SEEN_CAPACITY) {
+            String eldest = seenOrder.poll();
+            if (eldest != null) {
+                seen.remove(eldest);
+                seenCount.decrementAndGet();
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,168 @@
+package chatroom;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FederationLink类 - 到其他节点的服务器间连接
+ * 作用：主动连接配置中的一个节点，握手后和普通会话一样收发服务器间消息；
+ *      连接断开后按指数退避自动重连
+ * 知识点：
+ * 1. 实现ChatSession - 收到的消息交给MessageHandler处理，发送走和客户端相同的有界队列
+ * 2. 读写分离 - 读线程处理收到的消息，写线程合并写出待发送的消息
+ * 3. 指数退避 - 对方节点没有启动时不会频繁重试
+ */
+public class FederationLink implements ChatSession {
+    private static final int CONNECT_TIMEOUT_MILLIS = 3000;  // 连接超时
+    private static final long MAX_BACKOFF_MILLIS = 30_000;  // 最长重连间隔
+
+    private final String host;  // 对方地址
+    private final int port;  // 对方端口
+    private final OutboundQueue<EncodedMessage> outbound = new OutboundQueue<>(ServerConfig.OUTBOUND_CAPACITY,
+            OutboundQueue.Policy.DROP_OLDEST);  // 待发送的消息
+    private volatile Socket socket;  // 当前连接
+    private volatile boolean isConnected;  // 连接状态
+
+    public FederationLink(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * 启动连接线程
+     */
+    public void start() {
+        Thread.ofPlatform().daemon().name("federation-" + host + ":" + port).start(this::connectLoop);
+    }
+
+    /**
+     * 连接循环
+     * 作用：连接对方节点，发送握手消息，然后不断读取对方发来的消息；断开后等待一段时间重连
+     */
+    private void connectLoop() {
+        long backoff = 1000;
+        while (true) {
+            Thread writerThread = null;
+            try (Socket s = new Socket()) {
+                s.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+                s.setTcpNoDelay(true);
+                socket = s;
+                BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                OutputStream writer = new BufferedOutputStream(s.getOutputStream(), ServerConfig.WRITE_BUFFER_BYTES);
+                // 握手消息必须是第一条，断线期间残留的消息直接丢弃
+                outbound.clear();
+                EncodedMessage.of(Federation.hello()).writeTo(writer);
+                writer.flush();
+                isConnected = true;
+                backoff = 1000;
+                writerThread = Thread.ofPlatform().daemon().name("federation-writer-" + host + ":" + port)
+                        .start(() -> writeLoop(writer));
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (ProtocolCodec.parseCommand(line).name().startsWith("FED_")) {
+                        MessageHandler.handleMessage(this, line).join();
+                    } else if (line.equals("PING")) {
+                        // 对方的心跳检查，回复后对方才不会断开这条连接
+                        sendMessage("PONG");
+                    } else {
+                        // 对方的提示信息（例如握手失败），不能再回复，否则会来回循环
+                        Log.info("联邦节点 " + host + ":" + port + "：" + line);
+                    }
+                }
+            } catch (IOException e) {
+                if (isConnected) {
+                    Log.warn("联邦连接断开：" + host + ":" + port + "，" + e.getMessage());
+                }
+            } finally {
+                isConnected = false;
+                if (writerThread != null) {
+                    writerThread.interrupt();
+                }
+                Federation.sessionClosed(this);
+            }
+
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+
+    /**
+     * 写线程循环
+     * 作用：把队列中已有的消息一起写出，队列取空后flush
+     */
+    private void writeLoop(OutputStream writer) {
+        List<EncodedMessage> batch = new ArrayList<>(ServerConfig.WRITE_BATCH);
+        try {
+            while (isConnected) {
+                batch.add(outbound.take());
+                outbound.drainTo(batch, ServerConfig.WRITE_BATCH - 1);
+                for (EncodedMessage message : batch) {
+                    message.writeTo(writer);
+                }
+                batch.clear();
+                if (outbound.isEmpty()) {
+                    writer.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            // 连接断开时被中断，正常退出
+        } catch (IOException e) {
+            // 写失败，关闭socket让读线程退出并重连
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // 已经关闭
+            }
+        }
+    }
+
+    @Override
+    public void sendEncoded(EncodedMessage message) {
+        if (isConnected) {
+            outbound.offer(message);
+        }
+    }
+
+    @Override
+    public String getUsername() {
+        return null;
+    }
+
+    @Override
+    public void setUsername(String username) {
+        // 服务器间连接没有用户名
+    }
+
+    @Override
+    public String getRoom() {
+        return null;
+    }
+
+    @Override
+    public void setRoom(String room) {
+        // 服务器间连接不加入房间
+    }
+
+    @Override
+    public boolean isConnected() {
+        return isConnected;
+    }
+
+    @Override
+    public String toString() {
+        return "FederationLink[" + host + ":" + port + "]";
+    }
+}
@@ -0,0 +1,124 @@
+package chatroom;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Heartbeat类 - 连接心跳和超时
+ * 作用：每个连接一个，记录最后一次收到数据的时间；
+ *      空闲超过 heartbeat.idleSeconds 时发送PING，再过 heartbeat.timeoutSeconds 仍没有收到任何数据就断开；
+ *      连接后 login.timeoutSeconds 内没有登录也断开，半开的TCP连接不会一直占着线程、缓冲区和在线列表
+ * 知识点：
+ * 1. 只记时间戳 - 收到数据时只写一次volatile变量，不重新安排定时任务；
+ *    定时任务到期时再看最后活动时间，还没空闲够就按剩余时间重新安排
+ * 2. 时间轮 - 所有连接共用一个TimerWheel，添加和取消定时任务都是O(1)
+ * 3. 断开由会话自己完成 - 定时任务只调用会话提供的断开方法（线程安全），不直接操作socket
+ */
+public class Heartbeat {
+    private static final TimerWheel timer = new TimerWheel("heartbeat-timer", ServerConfig.TIMER_TICK_MILLIS, 512);  // 所有连接共用的时间轮
+    private static final long idleNanos = TimeUnit.SECONDS.toNanos(ServerConfig.HEARTBEAT_IDLE_SECONDS);  // 空闲多久发送PING
+    private static final long timeoutNanos = TimeUnit.SECONDS.toNanos(ServerConfig.HEARTBEAT_TIMEOUT_SECONDS);  // 发送PING后等待多久
+    private static final LongAdder idleEvictions = new LongAdder();  // 因心跳超时断开的连接数
+    private static final LongAdder loginTimeouts = new LongAdder();  // 因没有登录断开的连接数
+
+    private final ChatSession session;  // 所属会话
+    private final Runnable evict;  // 断开会话的方法
+    private volatile long lastActivity = System.nanoTime();  // 最后一次收到数据的时间
+    private long pingSentAt;  // 发送PING的时间，0表示没有等待中的PING，只在时间轮线程中使用
+    private volatile TimerWheel.Timeout idleCheck;  // 空闲检查
+    private final TimerWheel.Timeout loginCheck;  // 登录期限检查
+    private volatile boolean cancelled;  // 会话已关闭
+
+    private Heartbeat(ChatSession session, Runnable evict) {
+        this.session = session;
+        this.evict = evict;
+        this.loginCheck = ServerConfig.LOGIN_TIMEOUT_SECONDS > 0
+                ? timer.schedule(this::checkLogin, ServerConfig.LOGIN_TIMEOUT_SECONDS, TimeUnit.SECONDS) : null;
+        if (idleNanos > 0) {
+            idleCheck = timer.schedule(this::checkIdle, idleNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 开始监视一个连接
+     * @param session 会话
+     * @param evict 断开会话的方法，在时间轮线程中调用，必须线程安全且不阻塞
+     * @return 心跳，收到数据时调用touch()，连接关闭时调用cancel()
+     */
+    public static Heartbeat watch(ChatSession session, Runnable evict) {
+        return new Heartbeat(session, evict);
+    }
+
+    /**
+     * 收到数据
+     */
+    public void touch() {
+        lastActivity = System.nanoTime();
+    }
+
+    /**
+     * 连接已关闭，取消定时任务
+     */
+    public void cancel() {
+        cancelled = true;
+        if (loginCheck != null) {
+            loginCheck.cancel();
+        }
+        TimerWheel.Timeout check = idleCheck;
+        if (check != null) {
+            check.cancel();
+        }
+    }
+
+    public static long getIdleEvictions() {
+        return idleEvictions.sum();
+    }
+
+    public static long getLoginTimeouts() {
+        return loginTimeouts.sum();
+    }
+
+    /**
+     * 登录期限到期：仍未登录的连接断开（服务器间连接不需要登录）
+     */
+    private void checkLogin() {
+        if (session.getUsername() == null && !Federation.isPeer(session)) {
+            loginTimeouts.increment();
+            Log.info("连接 " + ServerConfig.LOGIN_TIMEOUT_SECONDS + " 秒内没有登录，断开连接");
+            evict.run();
+        }
+    }
+
+    /**
+     * 空闲检查到期
+     * 作用：发送PING后有过数据则重新计时；空闲不够久则按剩余时间重新检查；
+     *      空闲够久且没有等待中的PING就发送PING；PING之后一直没有数据就断开
+     */
+    private void checkIdle() {
+        if (cancelled) {
+            return;
+        }
+        long now = System.nanoTime();
+        long last = lastActivity;
+        if (pingSentAt != 0 && last - pingSentAt > 0) {
+            pingSentAt = 0;  // 收到了回复（或者其他数据）
+        }
+        long delay;
+        if (pingSentAt != 0) {
+            idleEvictions.increment();
+            Log.info("客户端 " + session.getUsername() + " 心跳超时，断开连接");
+            evict.run();
+            return;
+        } else if (now - last < idleNanos) {
+            delay = idleNanos - (now - last);
+        } else {
+            pingSentAt = now;
+            session.sendMessage("PING");
+            delay = timeoutNanos;
+        }
+        idleCheck = timer.schedule(this::checkIdle, delay, TimeUnit.NANOSECONDS);
+        if (cancelled) {
+            idleCheck.cancel();  // 和cancel()同时发生时，保证新安排的任务也被取消
+        }
+    }
+}
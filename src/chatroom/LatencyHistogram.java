@@ -0,0 +1,110 @@
+package chatroom;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram类 - 延迟直方图
+ * 作用：记录某个操作的耗时分布，可以估算平均值、最大值和P50/P99等分位数
+ * 知识点：
+ * 1. 对数分桶 - 第i个桶记录耗时在[2^(i-1), 2^i)纳秒之间的次数（第0个桶记录0），64个桶覆盖所有非负long值，
+ *    记录一次只需要一次numberOfLeadingZeros和一次累加，分位数误差不超过2倍
+ * 2. LongAdder - 内部按线程分散到不同的计数单元，多个线程同时记录也不会争抢同一个变量
+ * 3. LongAccumulator - 同样是分散计数，用来记录最大值
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 64;  // 桶的个数
+
+    private final String name;  // 名称
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];  // 每个桶的次数
+    private final LongAdder count = new LongAdder();  // 总次数
+    private final LongAdder totalNanos = new LongAdder();  // 总耗时
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);  // 最大耗时
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录一次耗时
+     * @param nanos 耗时（纳秒），小于0时按0记录
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[BUCKETS - Long.numberOfLeadingZeros(nanos)].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * 记录从start到现在的耗时
+     * @param startNanos System.nanoTime()得到的开始时间
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * 平均耗时
+     * @return 平均耗时（微秒）
+     */
+    public double getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / 1000.0 / n;
+    }
+
+    /**
+     * 最大耗时
+     * @return 最大耗时（微秒）
+     */
+    public double getMaxMicros() {
+        return maxNanos.get() / 1000.0;
+    }
+
+    /**
+     * 估算分位数
+     * 作用：从小到大累加各桶的次数，找到累计次数达到比例的桶，返回该桶的上界
+     * @param quantile 比例，例如0.99
+     * @return 耗时上界（微秒）
+     */
+    public double getPercentileMicros(double quantile) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(n * quantile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i].sum();
+            if (seen >= target) {
+                long upper = i >= 63 ? Long.MAX_VALUE : (1L << i);
+                return Math.min(upper, maxNanos.get()) / 1000.0;
+            }
+        }
+        return getMaxMicros();
+    }
+
+    /**
+     * 生成摘要
+     * @return 形如 "login{n=10,avg=1.2ms,p50=1.0ms,p99=2.1ms,max=2.3ms}"
+     */
+    public String summary() {
+        return String.format("%s{n=%d,avg=%.2fms,p50=%.2fms,p99=%.2fms,max=%.2fms}", name, getCount(),
+                getMeanMicros() / 1000, getPercentileMicros(0.5) / 1000, getPercentileMicros(0.99) / 1000,
+                getMaxMicros() / 1000);
+    }
+}
@@ -0,0 +1,476 @@
+package chatroom;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LoadGenerator类 - 无界面压力测试工具
+ * 作用：模拟大量用户连接服务器，登录（不存在时先注册）后按比例混合发送聊天消息和GET_USERS，
+ *      统计消息从发送到其他用户收到的延迟、GET_USERS的响应延迟和吞吐量，输出JSON报告
+ * 用法：java -cp target/classes chatroom.LoadGenerator --users=1000 --duration=30 --rate=1 --report=load.json
+ *      加 --embedded=true 时在本进程中启动服务器，--server.xxx=yyy 会作为 --xxx=yyy 传给服务器
+ * 知识点：
+ * 1. 虚拟线程 - 每个模拟用户一个发送线程和一个接收线程，几千个用户也只占少量平台线程
+ * 2. 时间戳 - 聊天内容中带上发送时的System.nanoTime()和本次运行的编号，
+ *    收发都在同一个进程中，接收时直接相减；其他运行留下的历史消息因编号不同被忽略
+ * 3. 对数分桶直方图 - 延迟记录在LatencyHistogram中，分位数误差不超过2倍
+ * 4. 分阶段 - 所有用户登录完成后才开始计时，登录耗时单独统计
+ */
+public class LoadGenerator {
+    private static final String MARK = "lg:";  // 聊天内容中时间戳的前缀
+    private static final String PASSWORD = "p123";  // 模拟用户的密码
+
+    private final Map<String, String> options;  // 命令行参数
+    private final String host;  // 服务器地址
+    private final int port;  // 服务器端口
+    private final int users;  // 模拟用户数
+    private final int rooms;  // 房间数，大于1时用户轮流加入 load0、load1……
+    private final int durationSeconds;  // 计时阶段的时长
+    private final int rampSeconds;  // 用户分散在这段时间内连接
+    private final double rate;  // 每个用户每秒的操作数
+    private final int chatWeight;  // 聊天消息的比例
+    private final int usersWeight;  // GET_USERS的比例
+    private final int messageBytes;  // 聊天内容的最小长度（不足时补齐）
+    private final String prefix;  // 用户名前缀（纯字母）
+    private final String runId = Long.toString(System.nanoTime() & 0xffffffffL, 36);  // 本次运行的编号
+
+    private final LatencyHistogram authLatency = new LatencyHistogram("login");  // 登录或注册的耗时
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram("delivery");  // 聊天消息送达的耗时
+    private final LatencyHistogram usersLatency = new LatencyHistogram("getUsers");  // GET_USERS的响应耗时
+    private final LongAdder connectFailures = new LongAdder();  // 连接失败的用户数
+    private final LongAdder authFailures = new LongAdder();  // 登录和注册都失败的用户数
+    private final LongAdder chatSent = new LongAdder();  // 计时阶段发送的聊天消息数
+    private final LongAdder usersSent = new LongAdder();  // 计时阶段发送的GET_USERS数
+    private final LongAdder chatReceived = new LongAdder();  // 收到的本次运行的聊天消息数
+    private final LongAdder disconnects = new LongAdder();  // 被服务器提前断开的用户数
+    private final List<SimulatedUser> simulated = new ArrayList<>();  // 所有模拟用户
+    private final CountDownLatch ready;  // 登录阶段完成的用户数
+    private final CountDownLatch go = new CountDownLatch(1);  // 开始计时
+    private volatile boolean running = true;  // 是否还在计时阶段
+
+    LoadGenerator(Map<String, String> options) {
+        this.options = options;
+        this.host = option("host", "localhost");
+        this.port = Integer.parseInt(option("port", "8888"));
+        this.users = Integer.parseInt(option("users", "100"));
+        this.rooms = Math.max(1, Integer.parseInt(option("rooms", "1")));
+        this.durationSeconds = Integer.parseInt(option("duration", "30"));
+        this.rampSeconds = Integer.parseInt(option("ramp", "5"));
+        this.rate = Double.parseDouble(option("rate", "1"));
+        this.messageBytes = Integer.parseInt(option("messageBytes", "32"));
+        this.prefix = option("prefix", "load");
+        int[] mix = parseMix(option("mix", "chat:90,users:10"));
+        this.chatWeight = mix[0];
+        this.usersWeight = mix[1];
+        this.ready = new CountDownLatch(users);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        List<String> serverArgs = new ArrayList<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq <= 2) {
+                System.out.println("忽略无法识别的参数：" + arg);
+            } else if (arg.startsWith("--server.")) {
+                serverArgs.add("--" + arg.substring("--server.".length()));
+            } else {
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        LoadGenerator generator = new LoadGenerator(options);
+        if (Boolean.parseBoolean(generator.option("embedded", "false"))) {
+            generator.startEmbeddedServer(serverArgs);
+        }
+        String report = generator.run();
+        String file = generator.option("report", "loadgen-report.json");
+        Files.writeString(Paths.get(file), report, StandardCharsets.UTF_8);
+        System.out.println(report);
+        System.out.println("报告已写入 " + file);
+        System.exit(0);
+    }
+
+    private String option(String key, String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+
+    /**
+     * 解析操作比例，例如 chat:90,users:10
+     * @return {聊天比例, GET_USERS比例}
+     */
+    private static int[] parseMix(String mix) {
+        int[] weights = new int[2];
+        for (String part : mix.split(",")) {
+            String[] kv = part.trim().split(":");
+            if (kv.length != 2) {
+                continue;
+            }
+            int weight = Integer.parseInt(kv[1].trim());
+            if (kv[0].trim().equals("chat")) {
+                weights[0] = weight;
+            } else if (kv[0].trim().equals("users")) {
+                weights[1] = weight;
+            }
+        }
+        if (weights[0] + weights[1] <= 0) {
+            weights[0] = 1;
+        }
+        return weights;
+    }
+
+    /**
+     * 在本进程中启动服务器，等到端口可以连接后返回
+     * @param serverArgs 传给Server.main的参数
+     */
+    private void startEmbeddedServer(List<String> serverArgs) throws InterruptedException {
+        serverArgs.add(0, "--port=" + port);
+        Thread.ofPlatform().daemon().name("embedded-server")
+                .start(() -> Server.main(serverArgs.toArray(new String[0])));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (System.nanoTime() < deadline) {
+            try (Socket probe = new Socket()) {
+                probe.connect(new InetSocketAddress(host, port), 1000);
+                return;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        throw new IllegalStateException("内置服务器没有在30秒内启动");
+    }
+
+    /**
+     * 运行压力测试
+     * @return JSON报告
+     */
+    String run() throws InterruptedException {
+        System.out.println("开始连接 " + users + " 个模拟用户（运行编号 " + runId + "）...");
+        for (int i = 0; i < users; i++) {
+            SimulatedUser user = new SimulatedUser(i);
+            simulated.add(user);
+            Thread.ofVirtual().name("load-user-" + i).start(user::run);
+        }
+        if (!ready.await(rampSeconds + 120L, TimeUnit.SECONDS)) {
+            System.out.println("部分用户没有完成登录，仍然开始计时");
+        }
+
+        System.out.println("登录完成，开始计时 " + durationSeconds + " 秒");
+        long start = System.nanoTime();
+        go.countDown();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+        running = false;
+        long elapsed = System.nanoTime() - start;
+        // 等待还在路上的消息送达
+        Thread.sleep(Long.parseLong(option("drain", "2000")));
+        for (SimulatedUser user : simulated) {
+            user.close();
+        }
+        return report(elapsed);
+    }
+
+    /**
+     * 计算应该收到的聊天消息数：每条消息发给同一房间中除发送者以外的已登录用户
+     */
+    private long expectedDeliveries() {
+        int[] members = new int[rooms];
+        for (SimulatedUser user : simulated) {
+            if (user.authenticated) {
+                members[user.room]++;
+            }
+        }
+        long expected = 0;
+        for (SimulatedUser user : simulated) {
+            if (user.authenticated) {
+                expected += user.chatSent.sum() * (members[user.room] - 1);
+            }
+        }
+        return expected;
+    }
+
+    private String report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long authenticated = simulated.stream().filter(user -> user.authenticated).count();
+        long expected = expectedDeliveries();
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\n");
+        json.append("  \"runId\": \"").append(runId).append("\",\n");
+        json.append("  \"config\": {");
+        json.append("\"host\": \"").append(host).append("\", \"port\": ").append(port)
+                .append(", \"users\": ").append(users).append(", \"rooms\": ").append(rooms)
+                .append(", \"durationSeconds\": ").append(durationSeconds)
+                .append(", \"ratePerUser\": ").append(rate)
+                .append(", \"mix\": {\"chat\": ").append(chatWeight).append(", \"users\": ").append(usersWeight)
+                .append("}, \"messageBytes\": ").append(messageBytes).append("},\n");
+        json.append("  \"elapsedSeconds\": ").append(format(seconds)).append(",\n");
+        json.append("  \"sessions\": {\"authenticated\": ").append(authenticated)
+                .append(", \"connectFailures\": ").append(connectFailures.sum())
+                .append(", \"authFailures\": ").append(authFailures.sum())
+                .append(", \"disconnected\": ").append(disconnects.sum()).append("},\n");
+        json.append("  \"sent\": {\"chat\": ").append(chatSent.sum())
+                .append(", \"getUsers\": ").append(usersSent.sum()).append("},\n");
+        json.append("  \"delivered\": {\"chat\": ").append(chatReceived.sum())
+                .append(", \"expected\": ").append(expected)
+                .append(", \"ratio\": ").append(format(expected == 0 ? 1 : (double) chatReceived.sum() / expected))
+                .append("},\n");
+        json.append("  \"throughput\": {\"sentPerSecond\": ")
+                .append(format((chatSent.sum() + usersSent.sum()) / seconds))
+                .append(", \"deliveredPerSecond\": ").append(format(chatReceived.sum() / seconds)).append("},\n");
+        json.append("  \"latencyMillis\": {\n");
+        appendHistogram(json, deliveryLatency).append(",\n");
+        appendHistogram(json, usersLatency).append(",\n");
+        appendHistogram(json, authLatency).append("\n");
+        json.append("  }\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    private static StringBuilder appendHistogram(StringBuilder json, LatencyHistogram histogram) {
+        return json.append("    \"").append(histogram.getName()).append("\": {\"count\": ").append(histogram.getCount())
+                .append(", \"mean\": ").append(format(histogram.getMeanMicros() / 1000))
+                .append(", \"p50\": ").append(format(histogram.getPercentileMicros(0.5) / 1000))
+                .append(", \"p90\": ").append(format(histogram.getPercentileMicros(0.9) / 1000))
+                .append(", \"p99\": ").append(format(histogram.getPercentileMicros(0.99) / 1000))
+                .append(", \"p999\": ").append(format(histogram.getPercentileMicros(0.999) / 1000))
+                .append(", \"max\": ").append(format(histogram.getMaxMicros() / 1000)).append("}");
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * 第index个模拟用户的用户名：前缀加上index的26进制字母表示（用户名不能有数字）
+     */
+    private String username(int index) {
+        char[] letters = new char[4];
+        for (int i = letters.length - 1; i >= 0; i--) {
+            letters[i] = (char) ('a' + index % 26);
+            index /= 26;
+        }
+        return prefix + new String(letters);
+    }
+
+    /**
+     * SimulatedUser类 - 一个模拟用户
+     * 作用：发送线程按节奏发送请求，接收线程识别响应并记录延迟
+     */
+    private final class SimulatedUser {
+        private final int index;  // 序号
+        private final String username;  // 用户名
+        private final int room;  // 房间序号
+        private final ConcurrentLinkedQueue<Long> pendingUsers = new ConcurrentLinkedQueue<>();  // 未收到响应的GET_USERS发送时间
+        private final LongAdder chatSent = new LongAdder();  // 本用户发送的聊天消息数
+        private volatile CompletableFuture<String> authReply;  // 等待中的登录/注册响应
+        private volatile boolean authenticated;  // 是否已登录
+        private volatile boolean closing;  // 是否由压力测试主动关闭
+        private Socket socket;  // 连接
+        private Writer writer;  // 输出流，发送线程和回复PONG的接收线程共用，由send()串行化
+
+        SimulatedUser(int index) {
+            this.index = index;
+            this.username = username(index);
+            this.room = index % rooms;
+        }
+
+        void run() {
+            boolean ok = false;
+            try {
+                Thread.sleep(users <= 1 ? 0 : TimeUnit.SECONDS.toMillis(rampSeconds) * index / users);
+                ok = connect() && authenticate() && joinRoom();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // 连接断开，由接收线程计数
+            } finally {
+                ready.countDown();
+            }
+            if (!ok) {
+                close();
+                return;
+            }
+            try {
+                go.await();
+                sendLoop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // 连接断开，由接收线程计数
+            }
+        }
+
+        private boolean connect() {
+            try {
+                socket = new Socket();
+                socket.connect(new InetSocketAddress(host, port), 10_000);
+                socket.setTcpNoDelay(true);
+                writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                        StandardCharsets.UTF_8));
+                Thread.ofVirtual().name("load-reader-" + index).start(() -> readLoop(reader));
+                return true;
+            } catch (IOException e) {
+                connectFailures.increment();
+                return false;
+            }
+        }
+
+        /**
+         * 先登录，用户不存在时注册（注册成功也会登录）
+         */
+        private boolean authenticate() throws IOException {
+            long start = System.nanoTime();
+            String reply = request(ProtocolCodec.encode(ProtocolCodec.Command.LOGIN,
+                    "username", username, "password", PASSWORD));
+            if (reply == null || !reply.startsWith("登录成功")) {
+                reply = request(ProtocolCodec.encode(ProtocolCodec.Command.REGISTER,
+                        "username", username, "password", PASSWORD));
+            }
+            if (reply != null && (reply.startsWith("登录成功") || reply.startsWith("注册成功"))) {
+                authLatency.recordSince(start);
+                authenticated = true;
+                return true;
+            }
+            authFailures.increment();
+            return false;
+        }
+
+        private boolean joinRoom() throws IOException {
+            if (rooms > 1) {
+                send(ProtocolCodec.encode(ProtocolCodec.Command.JOIN, "room", prefix + room));
+            }
+            return true;
+        }
+
+        /**
+         * 发送登录或注册请求并等待响应
+         * @return 响应，超时或连接断开时返回null
+         */
+        private String request(String line) throws IOException {
+            CompletableFuture<String> reply = new CompletableFuture<>();
+            authReply = reply;
+            send(line);
+            try {
+                return reply.get(60, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        private void sendLoop() throws IOException, InterruptedException {
+            if (rate <= 0) {
+                return;  // 只保持连接，不发送任何请求
+            }
+            // 速率极小时间隔封顶为一天，累加时不会溢出
+            long intervalNanos = Math.min((long) (1e9 / rate), TimeUnit.DAYS.toNanos(1));
+            int totalWeight = chatWeight + usersWeight;
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            // 随机错开第一次发送，避免所有用户同时发送
+            long next = System.nanoTime() + random.nextLong(Math.min(intervalNanos, TimeUnit.SECONDS.toNanos(1)));
+            while (running && !socket.isClosed()) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                if (!running) {
+                    return;
+                }
+                if (random.nextInt(totalWeight) < chatWeight) {
+                    send(chatLine());
+                    chatSent.increment();
+                    LoadGenerator.this.chatSent.increment();
+                } else {
+                    pendingUsers.add(System.nanoTime());
+                    send("GET_USERS");
+                    usersSent.increment();
+                }
+                // 间隔在平均值的0.5到1.5倍之间随机
+                next += intervalNanos / 2 + random.nextLong(Math.max(intervalNanos, 1));
+            }
+        }
+
+        private String chatLine() {
+            StringBuilder line = new StringBuilder(Math.max(messageBytes, 32));
+            line.append(MARK).append(runId).append(':').append(System.nanoTime()).append(':');
+            while (line.length() < messageBytes) {
+                line.append('x');
+            }
+            return ProtocolCodec.encode(ProtocolCodec.Command.MSG, "text", line.toString());
+        }
+
+        private synchronized void send(String line) throws IOException {
+            writer.write(line);
+            writer.write('\n');
+            writer.flush();
+        }
+
+        private void readLoop(BufferedReader reader) {
+            String mark = MARK + runId + ":";
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    long now = System.nanoTime();
+                    int at = line.indexOf(mark);
+                    if (at >= 0) {
+                        int start = at + mark.length();
+                        int end = line.indexOf(':', start);
+                        if (end > start) {
+                            deliveryLatency.record(now - Long.parseLong(line, start, end, 10));
+                            chatReceived.increment();
+                        }
+                    } else if (line.startsWith("在线用户：")) {
+                        Long sent = pendingUsers.poll();
+                        if (sent != null) {
+                            usersLatency.record(now - sent);
+                        }
+                    } else if (line.equals("PING")) {
+                        send("PONG");  // 服务器的心跳检查
+                    } else if (line.startsWith("登录") || line.startsWith("注册")) {
+                        CompletableFuture<String> reply = authReply;
+                        if (reply != null) {
+                            reply.complete(line);
+                        }
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                // 连接关闭
+            }
+            if (!closing && running) {
+                disconnects.increment();
+            }
+            CompletableFuture<String> reply = authReply;
+            if (reply != null) {
+                reply.complete(null);
+            }
+        }
+
+        void close() {
+            closing = true;
+            try {
+                if (socket != null) {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                // 已经关闭
+            }
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package chatroom;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log类 - 异步日志
+ * 作用：服务器的日志不再直接System.out.println（System.out内部是同步的，所有线程会排队），
+ *      而是放入一个无锁环形缓冲区后立即返回，由后台线程写到日志文件（和控制台）；
+ *      缓冲区满时丢弃这条日志并计数，不会反过来拖慢聊天消息的处理
+ * 日志格式：2026-01-01T12:00:00.123 INFO [线程名] 内容
+ * 知识点：
+ * 1. 多生产者单消费者环形缓冲区 - 生产者用CAS领取槽位，唯一的写线程按顺序取出，全程不加锁
+ * 2. 日志级别 - DEBUG级别的逐条消息日志默认关闭，关闭时连字符串都不会拼接
+ * 3. 滚动文件 - 日志文件超过大小上限时改名为server.log.1、server.log.2……，只保留若干个
+ */
+public class Log {
+
+    /**
+     * 日志级别
+     */
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    /**
+     * 一条日志
+     */
+    private static final class Entry {
+        final Level level;  // 级别
+        final long time;  // 时间（毫秒）
+        final String thread;  // 线程名
+        final String message;  // 内容
+        final Object arg;  // 追加在内容后面的参数，由写线程转换成字符串，可以为null
+
+        Entry(Level level, String message, Object arg) {
+            this.level = level;
+            this.time = System.currentTimeMillis();
+            this.thread = Thread.currentThread().getName();
+            this.message = message;
+            this.arg = arg;
+        }
+    }
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS");
+    private static final Level level = Level.valueOf(ServerConfig.LOGGING_LEVEL.toUpperCase());  // 最低输出级别
+    private static final int capacity = Integer.highestOneBit(Math.max(ServerConfig.LOGGING_BUFFER, 2));  // 缓冲区容量（2的幂）
+    private static final AtomicReferenceArray<Entry> ring = new AtomicReferenceArray<>(capacity);  // 环形缓冲区
+    private static final AtomicLong tail = new AtomicLong();  // 下一个要领取的序号（生产者）
+    private static volatile long head;  // 下一个要取出的序号（只有写线程修改）
+    private static final LongAdder dropped = new LongAdder();  // 缓冲区满时丢弃的日志数
+    private static final Path file = Paths.get(ServerConfig.LOGGING_FILE);  // 日志文件，为空时只输出到控制台
+    private static final PrintStream console = System.out;  // 控制台
+    private static volatile boolean stopping;  // JVM正在退出
+    private static Writer writer;  // 日志文件，只在写线程中使用
+    private static long fileSize;  // 当前日志文件大小（按字符数估算），只在写线程中使用
+    private static boolean dirty;  // 上次flush之后是否写过日志，只在写线程中使用
+
+    static {
+        startWriter();
+    }
+
+    /**
+     * 是否输出DEBUG级别的日志
+     * @return 开启时返回true
+     */
+    public static boolean isDebugEnabled() {
+        return level == Level.DEBUG;
+    }
+
+    public static void debug(String message) {
+        log(Level.DEBUG, message, null);
+    }
+
+    /**
+     * 输出DEBUG日志
+     * 作用：参数由写线程拼接，DEBUG关闭时调用者不需要拼接字符串
+     * @param message 内容
+     * @param arg 追加在内容后面的参数
+     */
+    public static void debug(String message, Object arg) {
+        log(Level.DEBUG, message, arg);
+    }
+
+    public static void info(String message) {
+        log(Level.INFO, message, null);
+    }
+
+    public static void info(String message, Object arg) {
+        log(Level.INFO, message, arg);
+    }
+
+    public static void warn(String message) {
+        log(Level.WARN, message, null);
+    }
+
+    public static void warn(String message, Object arg) {
+        log(Level.WARN, message, arg);
+    }
+
+    public static void error(String message) {
+        log(Level.ERROR, message, null);
+    }
+
+    public static void error(String message, Object arg) {
+        log(Level.ERROR, message, arg);
+    }
+
+    /**
+     * 获取因缓冲区满而丢弃的日志数
+     * @return 丢弃数
+     */
+    public static long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * 放入一条日志
+     * 作用：领取一个槽位后写入，缓冲区满时直接丢弃，不会阻塞
+     */
+    private static void log(Level entryLevel, String message, Object arg) {
+        if (entryLevel.ordinal() < level.ordinal()) {
+            return;
+        }
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= capacity) {
+                dropped.increment();
+                return;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        ring.set((int) (sequence & (capacity - 1)), new Entry(entryLevel, message, arg));
+    }
+
+    /**
+     * 启动写线程，并在JVM退出时写完剩余的日志
+     */
+    private static void startWriter() {
+        Thread thread = new Thread(Log::writeLoop, "log-writer");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopping = true;
+            LockSupport.unpark(thread);
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                // 退出时不再等待
+            }
+        }, "log-shutdown"));
+    }
+
+    /**
+     * 写线程循环
+     * 作用：按序号依次取出日志；某个槽位已被领取但还没写入时稍等一下；
+     *      取空后flush，然后短暂休眠
+     */
+    private static void writeLoop() {
+        openFile();
+        StringBuilder line = new StringBuilder(256);
+        while (true) {
+            int index = (int) (head & (capacity - 1));
+            Entry entry = ring.get(index);
+            if (entry != null) {
+                ring.set(index, null);
+                head = head + 1;  // 只有写线程修改head，发布后生产者可以复用这个槽位
+                line.setLength(0);
+                format(entry, line);
+                write(line);
+                dirty = true;
+                continue;
+            }
+            if (dirty) {
+                flush();
+                dirty = false;
+            }
+            if (tail.get() != head) {
+                Thread.onSpinWait();  // 生产者已领取槽位但还没写入
+                continue;
+            }
+            if (stopping) {
+                return;
+            }
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+    private static void format(Entry entry, StringBuilder line) {
+        TIME_FORMAT.formatTo(LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.time), ZoneId.systemDefault()), line);
+        line.append(' ').append(entry.level).append(" [").append(entry.thread).append("] ").append(entry.message);
+        if (entry.arg != null) {
+            line.append(entry.arg);
+        }
+        line.append('\n');
+    }
+
+    private static void write(CharSequence line) {
+        if (ServerConfig.LOGGING_CONSOLE) {
+            console.print(line);
+        }
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.append(line);
+            fileSize += line.length();
+            if (fileSize >= ServerConfig.LOGGING_MAX_BYTES) {
+                roll();
+            }
+        } catch (IOException e) {
+            console.println("写入日志文件失败：" + e.getMessage());
+            writer = null;
+        }
+    }
+
+    private static void flush() {
+        if (ServerConfig.LOGGING_CONSOLE) {
+            console.flush();
+        }
+        if (writer != null) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                console.println("写入日志文件失败：" + e.getMessage());
+                writer = null;
+            }
+        }
+    }
+
+    /**
+     * 打开日志文件（追加）
+     */
+    private static void openFile() {
+        if (ServerConfig.LOGGING_FILE.isEmpty()) {
+            return;
+        }
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            fileSize = Files.exists(file) ? Files.size(file) : 0;
+            writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8), 64 * 1024);
+        } catch (IOException e) {
+            console.println("打开日志文件失败，只输出到控制台：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 滚动日志文件：server.log -> server.log.1 -> server.log.2 ……，超过保留个数的删除
+     */
+    private static void roll() throws IOException {
+        writer.close();
+        int files = Math.max(ServerConfig.LOGGING_FILES, 1);
+        Files.deleteIfExists(Paths.get(file + "." + files));
+        for (int i = files - 1; i >= 1; i--) {
+            Path older = Paths.get(file + "." + i);
+            if (Files.exists(older)) {
+                Files.move(older, Paths.get(file + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, Paths.get(file + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        openFile();
+    }
+}
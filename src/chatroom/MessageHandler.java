@@ -0,0 +1,410 @@
+package chatroom;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MessageHandler类 - 消息处理类
+ * 作用：解析客户端发送的一行消息，执行注册、登录、获取在线用户、聊天等操作
+ *      阻塞模式（ClientHandler）和NIO模式（NioSession）共用这一套处理逻辑
+ * 知识点：
+ * 1. 协议解析 - 消息格式的解析和生成统一由ProtocolCodec负责
+ * 2. 面向接口编程 - 只依赖ChatSession接口，不依赖具体的连接实现
+ * 3. 异步处理 - 登录和注册交给AuthService线程池，返回CompletableFuture；
+ *    调用者必须等它完成后再处理同一连接的下一条消息，保证消息顺序
+ * 4. 限流 - 聊天消息和私聊先经过会话的RateLimiter；delay模式下超速的消息同样返回一个稍后完成的Future，
+ *    等待期间不读取这个连接的下一条消息，也不占用任何线程
+ * 5. 请求编号 - 请求带id参数时，对它的回复封装为 REPLY:id=N&text=回复内容（见reply），
+ *    客户端按编号对应请求；广播、推送和重放的消息不带编号
+ */
+public class MessageHandler {
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);  // 同步处理完成
+
+    /**
+     * 处理客户端消息
+     * 作用：根据消息类型执行不同操作
+     * @param session 发送消息的会话
+     * @param message 客户端发送的消息
+     * 知识点：
+     * 1. 协议解析 - 由ProtocolCodec识别命令和取出参数
+     * 2. switch语句 - 根据命令类型执行不同逻辑
+     * 3. 方法调用 - 调用AuthService和Server的方法
+     * @return 处理完成时完成的Future，同步处理的消息返回已完成的Future
+     */
+    public static CompletableFuture<Void> handleMessage(ChatSession session, String message) {
+        // 消息格式：REGISTER:username=zhangsan&password=a123 或 LOGIN:username=zhangsan&password=a123
+        ServerMetrics.messageIn();
+        ProtocolCodec.Command command = ProtocolCodec.parseCommand(message);
+        switch (command) {
+            case REGISTER:
+                // 处理注册请求
+                return handleRegister(session, message, command);
+            case LOGIN:
+                // 处理登录请求
+                return handleLogin(session, message, command);
+            case FED_HELLO:
+            case FED_RELAY:
+            case FED_PRESENCE:
+            case FED_DM:
+            case FED_USER:
+                // 其他节点发来的服务器间消息
+                return Federation.handleFrame(session, message, command);
+            case RESUME:
+                // 从消息日志重放错过的消息，读磁盘较慢，在日志读线程中执行
+                return handleResume(session, message, command);
+            case PING:
+                // 客户端检查连接是否还活着，登录前也可以使用
+                reply(session, message, command, "PONG");
+                return DONE;
+            case PONG:
+                // 对服务器PING的回复，收到数据时已经更新了心跳时间
+                return DONE;
+            case REPLY:
+                // 只有服务器发送回复，客户端发来的忽略
+                return DONE;
+            case HELLO:
+                // 连接后协商扩展功能，登录前也可以使用
+                handleHello(session, message, command);
+                return DONE;
+            default:
+                // 处理聊天消息和其他需要登录后才能使用的命令
+                return admitChatMessage(session, message, command);
+        }
+    }
+
+    /**
+     * 回复请求
+     * 作用：请求带id参数时回复 REPLY:id=N&text=回复内容，客户端按编号找到对应的请求，
+     *      不会把广播、推送或其他请求的回复当成这个请求的回复；不带id时照旧直接发送回复内容
+     * @param session 发送请求的会话
+     * @param message 请求
+     * @param command 请求的命令
+     * @param text 回复内容
+     */
+    private static void reply(ChatSession session, String message, ProtocolCodec.Command command, String text) {
+        String id = requestId(message, command);
+        session.sendMessage(id == null ? text
+                : ProtocolCodec.encode(ProtocolCodec.Command.REPLY, "id", id, "text", text));
+    }
+
+    /**
+     * 取出请求编号
+     * @return 编号，没有用命令封装的聊天消息和不带编号的请求返回null
+     */
+    private static String requestId(String message, ProtocolCodec.Command command) {
+        return command == ProtocolCodec.Command.CHAT ? null : ProtocolCodec.field(message, command, "id");
+    }
+
+    /**
+     * 按发送速率限制处理聊天消息
+     * 作用：聊天消息和私聊每条都会引起一次广播或转发，先向RateLimiter取令牌；
+     *      取到令牌马上处理，需要等待时延迟处理，超速太多时拒绝
+     * @param session 发送消息的会话
+     * @param message 聊天消息
+     * @param command 已识别的命令
+     * @return 处理完成时完成的Future
+     */
+    private static CompletableFuture<Void> admitChatMessage(ChatSession session, String message,
+                                                            ProtocolCodec.Command command) {
+        RateLimiter limiter = session.getRateLimiter();
+        boolean limited = command == ProtocolCodec.Command.CHAT || command == ProtocolCodec.Command.MSG;
+        if (limiter != null && limited && session.getUsername() != null) {
+            long wait = limiter.admitMessage();
+            if (wait < 0) {
+                reply(session, message, command, "发送太快，消息未发送");
+                return DONE;
+            }
+            if (wait > 0) {
+                return CompletableFuture.runAsync(() -> handleChatMessage(session, message, command),
+                        CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS));
+            }
+        }
+        handleChatMessage(session, message, command);
+        return DONE;
+    }
+
+    /**
+     * 处理协商请求
+     * 作用：客户端请求的压缩算法服务器支持并且开启了压缩时同意，回复实际使用的算法，
+     *      之后发给这个会话的长消息都是压缩后的形式
+     * @param session 发送请求的会话
+     * @param message 协商消息（HELLO:compress=deflate）
+     * @param command 已识别的命令
+     */
+    private static void handleHello(ChatSession session, String message, ProtocolCodec.Command command) {
+        String compress = ProtocolCodec.field(message, command, "compress");
+        boolean accepted = ServerConfig.COMPRESSION_ENABLED && Compression.DEFLATE.equals(compress);
+        // 先回复再开启压缩，协商的回复本身总是不压缩的
+        reply(session, message, command, ProtocolCodec.encode(ProtocolCodec.Command.HELLO, "compress",
+                accepted ? Compression.DEFLATE : "none"));
+        if (accepted) {
+            session.enableCompression();
+        }
+    }
+
+    /**
+     * 处理注册请求
+     * 作用：处理用户注册逻辑
+     * @param session 发送请求的会话
+     * @param message 注册消息（REGISTER:username=zhangsan&password=a123）
+     * @param command 已识别的命令
+     * @return 注册结果发送后完成的Future
+     */
+    private static CompletableFuture<Void> handleRegister(ChatSession session, String message,
+                                                        ProtocolCodec.Command command) {
+        String username = ProtocolCodec.field(message, command, "username");
+        String password = ProtocolCodec.field(message, command, "password");
+        if (username == null || password == null) {
+            reply(session, message, command, "注册失败：消息格式错误");
+            return DONE;
+        }
+
+        return AuthService.register(username, password).thenAccept(result -> {
+            reply(session, message, command, result);
+
+            if (result.equals("注册成功！")) {
+                ServerMetrics.registered();
+                Server.bindUsername(session, username);
+                Log.info("用户 " + username + " 注册成功");
+            }
+        });
+    }
+
+    /**
+     * 处理登录请求
+     * 作用：处理用户登录逻辑
+     * @param session 发送请求的会话
+     * @param message 登录消息（LOGIN:username=zhangsan&password=a123）
+     * @param command 已识别的命令
+     * @return 登录结果发送后完成的Future
+     */
+    private static CompletableFuture<Void> handleLogin(ChatSession session, String message,
+                                                        ProtocolCodec.Command command) {
+        String username = ProtocolCodec.field(message, command, "username");
+        String password = ProtocolCodec.field(message, command, "password");
+        if (username == null || password == null) {
+            reply(session, message, command, "登录失败：消息格式错误");
+            return DONE;
+        }
+        // 失败次数过多时在计算密码哈希之前就拒绝
+        RateLimiter limiter = session.getRateLimiter();
+        String refused = limiter == null ? null : limiter.checkLogin();
+        if (refused != null) {
+            reply(session, message, command, refused);
+            return DONE;
+        }
+
+        return AuthService.login(username, password).thenAccept(result -> {
+            reply(session, message, command, result);
+
+            boolean success = result.startsWith("登录成功");
+            ServerMetrics.loginResult(success);
+            if (success) {
+                Server.bindUsername(session, username);
+                Log.info("用户 " + username + " 登录成功");
+            } else if (limiter != null && result.equals("登录失败：用户名或密码错误")) {
+                limiter.loginFailed();
+            }
+        });
+    }
+
+    /**
+     * 处理聊天消息
+     * 作用：处理用户发送的聊天消息
+     * @param session 发送消息的会话
+     * @param message 聊天消息
+     * @param command 已识别的命令
+     */
+    private static void handleChatMessage(ChatSession session, String message, ProtocolCodec.Command command) {
+        String username = session.getUsername();
+        if (username != null) {
+            switch (command) {
+                case GET_USERS:
+                    // 处理获取在线用户列表的请求
+                    if (requestId(message, command) == null) {
+                        session.sendEncoded(Server.getOnlineUsers());
+                    } else {
+                        reply(session, message, command, Server.getOnlineUsers().toString());
+                    }
+                    break;
+                case JOIN:
+                    handleJoin(session, message, command);
+                    break;
+                case LEAVE:
+                    // 离开当前房间，回到默认房间
+                    Server.joinRoom(session, RoomManager.DEFAULT_ROOM);
+                    reply(session, message, command, "已回到房间：" + RoomManager.DEFAULT_ROOM);
+                    break;
+                case ROOMS:
+                    reply(session, message, command, Server.listRooms());
+                    break;
+                case MSG:
+                    handleMsg(session, message, command);
+                    break;
+                case PRESENCE:
+                    handlePresence(session, message, command);
+                    break;
+                case STATS:
+                    // 运行指标只对管理员开放
+                    reply(session, message, command,
+                            ServerConfig.isAdmin(username) ? ServerMetrics.report() : "没有权限");
+                    break;
+                case OFFSET:
+                    MessageLog log = Server.getMessageLog();
+                    reply(session, message, command, log == null ? "消息日志未开启" : "当前消息偏移量：" + log.nextOffset());
+                    break;
+                default:
+                    // 没有用MSG封装的一行（旧客户端），整行当作聊天消息
+                    broadcastChat(session, message);
+                    break;
+            }
+        } else {
+            reply(session, message, command, "请先登录或注册！");
+        }
+    }
+
+    /**
+     * 广播聊天消息
+     * 作用：只广播给同一房间的客户端
+     * @param session 发送消息的会话
+     * @param text 聊天内容
+     */
+    private static void broadcastChat(ChatSession session, String text) {
+        String chatMessage = "[" + session.getUsername() + "]: " + text;
+        Log.debug(chatMessage);
+        Server.broadcastToRoom(session.getRoom(), chatMessage, session);
+    }
+
+    /**
+     * 处理MSG命令
+     * 作用：带to参数时是私聊，否则是发给当前房间的聊天消息（MSG:text=大家好）
+     * @param session 发送消息的会话
+     * @param message 聊天消息
+     * @param command 已识别的命令
+     */
+    private static void handleMsg(ChatSession session, String message, ProtocolCodec.Command command) {
+        if (ProtocolCodec.field(message, command, "to") != null) {
+            handleDirectMessage(session, message, command);
+            return;
+        }
+        String text = ProtocolCodec.field(message, command, "text");
+        if (text == null || text.isEmpty()) {
+            reply(session, message, command, "发送失败：消息格式错误");
+            return;
+        }
+        broadcastChat(session, text);
+    }
+
+    /**
+     * 处理加入房间请求
+     * @param session 发送请求的会话
+     * @param message 加入房间消息（JOIN:room=dev）
+     * @param command 已识别的命令
+     */
+    private static void handleJoin(ChatSession session, String message, ProtocolCodec.Command command) {
+        String roomName = ProtocolCodec.field(message, command, "room");
+        if (!RoomManager.isValidRoomName(roomName)) {
+            reply(session, message, command, "加入房间失败：房间名格式不正确（1-20位字母、数字、下划线或减号）");
+            return;
+        }
+        Server.joinRoom(session, roomName);
+        reply(session, message, command, "已加入房间：" + roomName);
+    }
+
+    /**
+     * 处理在线状态订阅
+     * 作用：订阅后先收到一次完整的在线列表，之后只收到 "用户上线：x" 和 "用户下线：x" 的增量通知
+     * @param session 发送请求的会话
+     * @param message 订阅消息（PRESENCE:subscribe=true 或 PRESENCE:subscribe=false）
+     * @param command 已识别的命令
+     */
+    private static void handlePresence(ChatSession session, String message, ProtocolCodec.Command command) {
+        PresenceTracker presence = Server.getPresence();
+        if ("true".equals(ProtocolCodec.field(message, command, "subscribe"))) {
+            presence.subscribe(session);
+            reply(session, message, command, "已订阅在线状态");
+            session.sendEncoded(presence.snapshot());
+        } else {
+            presence.unsubscribe(session);
+            reply(session, message, command, "已取消订阅在线状态");
+        }
+    }
+
+    /**
+     * 处理私聊消息
+     * 作用：按用户名直接找到接收者的会话并发送，不遍历任何客户端列表
+     * @param session 发送请求的会话
+     * @param message 私聊消息（MSG:to=lisi&text=你好）
+     * @param command 已识别的命令
+     */
+    private static void handleDirectMessage(ChatSession session, String message, ProtocolCodec.Command command) {
+        String to = ProtocolCodec.field(message, command, "to");
+        String text = ProtocolCodec.field(message, command, "text");
+        if (text == null || text.isEmpty()) {
+            reply(session, message, command, "私聊失败：消息格式错误");
+            return;
+        }
+        // 接收者从多个连接登录时每个连接都收到
+        EncodedMessage encoded = EncodedMessage.of("[私聊][" + session.getUsername() + "]: " + text);
+        boolean delivered = false;
+        for (ChatSession target : Server.findClients(to)) {
+            if (target.isConnected()) {
+                target.sendEncoded(encoded);
+                delivered = true;
+            }
+        }
+        // 联邦模式下接收者可能在其他节点上
+        if (!delivered && !Federation.directMessage(session.getUsername(), to, text)) {
+            reply(session, message, command, "私聊失败：用户 " + to + " 不在线");
+        }
+    }
+
+    /**
+     * 处理重放请求
+     * 作用：从消息日志中读取偏移量不小于offset、属于当前房间的消息发给会话，
+     *      最后告诉客户端下一次应从哪个偏移量继续
+     * @param session 发送请求的会话
+     * @param message 重放消息（RESUME:offset=120）
+     * @param command 已识别的命令
+     * @return 重放完成后完成的Future
+     */
+    private static CompletableFuture<Void> handleResume(ChatSession session, String message,
+                                                        ProtocolCodec.Command command) {
+        if (session.getUsername() == null) {
+            reply(session, message, command, "请先登录或注册！");
+            return DONE;
+        }
+        MessageLog log = Server.getMessageLog();
+        if (log == null) {
+            reply(session, message, command, "消息日志未开启");
+            return DONE;
+        }
+        long fromOffset;
+        try {
+            fromOffset = Long.parseLong(ProtocolCodec.field(message, command, "offset"));
+        } catch (NumberFormatException e) {
+            reply(session, message, command, "重放失败：偏移量格式错误");
+            return DONE;
+        }
+
+        String room = session.getRoom();
+        int[] count = {0};
+        long[] next = {Math.max(fromOffset, 0)};
+        return log.readAsync(fromOffset, (offset, messageRoom, text) -> {
+            next[0] = offset + 1;
+            if (messageRoom.equals(room)) {
+                session.sendMessage(text);
+                count[0]++;
+            }
+            return count[0] < ServerConfig.LOG_REPLAY_MAX && session.isConnected();
+        }).handle((result, error) -> {
+            if (error != null) {
+                Log.warn("重放消息日志失败：" + error.getMessage());
+                reply(session, message, command, "重放失败：服务器繁忙，请稍后再试");
+            } else {
+                reply(session, message, command, "重放完成：共 " + count[0] + " 条消息，下一条偏移量：" + next[0]);
+            }
+            return null;
+        });
+    }
+}
@@ -0,0 +1,110 @@
+package chatroom;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * MessageHistory类 - 最近消息环形缓冲区
+ * 作用：保存一个房间最近的若干条聊天消息，用户登录或加入房间后重放给他，
+ *      容量固定，满了之后新消息覆盖最旧的消息
+ * 知识点：
+ * 1. 预分配 - 槽位数组在创建时一次分配好，记录一条消息只创建一个很小的槽位条目
+ * 2. 无锁写入 - 写入者用AtomicLong领取序号，再用CAS把条目放进槽位，写入者之间互不等待，
+ *    不使用synchronized，广播线程（包括虚拟线程）不会在这里阻塞、自旋或钉住载体线程
+ * 3. 跳过未写好的槽位 - 读取完全不加锁也不等待：序号已领取但条目还没放进槽位的消息直接跳过，
+ *    由调用者交给广播路径发送（见Room），重放再慢也不会挡住正在进行的广播
+ * 4. 条目不可变 - 序号和消息放在同一个条目里一起发布，读到的条目要么完整要么是别的序号
+ */
+public class MessageHistory {
+    private static final long[] NONE = new long[0];  // 没有跳过任何消息
+
+    /**
+     * 槽位条目
+     */
+    private static final class Entry {
+        final long sequence;  // 消息序号
+        final EncodedMessage message;  // 消息
+
+        Entry(long sequence, EncodedMessage message) {
+            this.sequence = sequence;
+            this.message = message;
+        }
+    }
+
+    private final int capacity;  // 最多保存的消息条数
+    private final AtomicReferenceArray<Entry> slots;  // 消息槽位
+    private final AtomicLong claimed = new AtomicLong();  // 已领取的序号数（下一条消息的序号）
+
+    public MessageHistory(int capacity) {
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(Math.max(capacity, 1));
+    }
+
+    /**
+     * 记录一条消息
+     * 作用：多个广播线程可以同时调用；容量为0时只分配序号，不保存消息
+     * @param message 已编码的消息
+     * @return 消息的序号
+     */
+    public long record(EncodedMessage message) {
+        long sequence = claimed.getAndIncrement();
+        if (capacity > 0) {
+            int slot = (int) (sequence % capacity);
+            Entry entry = new Entry(sequence, message);
+            while (true) {
+                // 同一个槽位只会被相差整圈的写入者同时写，较新的消息已经写入时不再用旧消息覆盖
+                Entry current = slots.get(slot);
+                if ((current != null && current.sequence >= sequence) || slots.compareAndSet(slot, current, entry)) {
+                    break;
+                }
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * 获取下一条消息的序号
+     * 作用：加入房间时在成员加入之后调用，序号小于它的消息由重放发送，不小于它的由广播发送
+     * @return 序号
+     */
+    public long nextSequence() {
+        return claimed.get();
+    }
+
+    /**
+     * 把序号小于end的最近消息按时间顺序发送给会话
+     * 作用：不等待还没写好的消息，把它们的序号返回给调用者，由广播路径补发
+     * @param session 会话
+     * @param end 结束序号（不包含），由nextSequence()得到
+     * @return 窗口内没有发送的消息序号（从小到大），通常为空
+     */
+    public long[] replay(ChatSession session, long end) {
+        if (capacity == 0) {
+            return NONE;
+        }
+        long[] skipped = NONE;
+        int skippedCount = 0;
+        for (long sequence = Math.max(0, end - capacity); sequence < end; sequence++) {
+            Entry entry = slots.get((int) (sequence % capacity));
+            if (entry == null || entry.sequence != sequence) {
+                // 还没写好，或已被新消息覆盖
+                if (skippedCount == skipped.length) {
+                    skipped = Arrays.copyOf(skipped, Math.max(4, skippedCount * 2));
+                }
+                skipped[skippedCount++] = sequence;
+                continue;
+            }
+            session.sendEncoded(entry.message.replayed());
+        }
+        return skippedCount == skipped.length ? skipped : Arrays.copyOf(skipped, skippedCount);
+    }
+
+    /**
+     * 获取当前保存的消息条数
+     * @return 条数
+     */
+    public int size() {
+        return (int) Math.min(claimed.get(), capacity);
+    }
+}
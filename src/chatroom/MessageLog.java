@@ -0,0 +1,422 @@
+package chatroom;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * MessageLog类 - 聊天消息持久化日志
+ * 作用：把所有房间的聊天消息按顺序追加到chatlog目录下的分段文件中，
+ *      每条消息分配一个单调递增的偏移量；客户端断线重连后可以从某个偏移量开始，
+ *      顺序读取磁盘上的日志重放错过的消息，不需要在内存中保存全部历史
+ * 文件格式：每个分段文件以第一条消息的偏移量命名（00000000000000000000.log），
+ *      每条记录为 长度(int) 偏移量(long) CRC32(int) 房间名长度(short) 房间名 消息内容
+ * 知识点：
+ * 1. 分段文件 - 当前分段写满后换新文件，超过保留数量的最旧分段直接删除，不需要重写文件
+ * 2. 批量写入 - 后台线程把一段时间内的多条记录合并成一次gathering write和一次force
+ * 3. 顺序读 - 重放时按偏移量找到所在分段后从头顺序读，只用到很小的读缓冲区
+ * 4. 崩溃恢复 - 启动时检查最后一个分段，截断写了一半的记录；被截掉的记录的偏移量不再分配，
+ *    已经告诉过客户端的偏移量不会指向另一条消息。运行中写入失败时同样把文件退回这一批之前的长度
+ * 5. 异步读 - 重放在专用的读线程中执行，不阻塞NIO模式的Selector线程
+ * 6. 无锁追加 - 偏移量由AtomicLong分配，append不加锁（不会钉住虚拟线程的载体线程）；
+ *    入队顺序可能和偏移量顺序不同，由写线程按偏移量重新排好再写入
+ */
+public class MessageLog {
+
+    /**
+     * 重放时接收消息
+     */
+    public interface Reader {
+        /**
+         * 读到一条消息
+         * @param offset 偏移量
+         * @param room 房间名
+         * @param message 消息内容
+         * @return 返回false时停止读取
+         */
+        boolean accept(long offset, String room, String message);
+    }
+
+    private static final String SUFFIX = ".log";  // 分段文件后缀
+    private static final int HEADER_BYTES = 8 + 4 + 2;  // 长度字段之后的固定部分：偏移量、CRC、房间名长度
+    private static final int MAX_BATCH = 512;  // 一次批量写入最多合并多少条记录
+    private static final int MAX_RECORD_BYTES = 1024 * 1024;  // 单条记录长度上限，超过时视为损坏
+    private static final int MIN_RECORD_BYTES = 4 + HEADER_BYTES;  // 最短的一条记录（房间名和消息都为空）
+    private static final int MAX_ROOM_BYTES = 255;  // 房间名长度上限
+    private static final int MAX_MESSAGE_BYTES = MAX_RECORD_BYTES - HEADER_BYTES - MAX_ROOM_BYTES;  // 消息内容长度上限，超过时截断
+
+    private final Path directory;  // 日志目录
+    private final long segmentBytes;  // 单个分段文件的大小上限
+    private final int maxSegments;  // 最多保留的分段数
+    private final ConcurrentSkipListMap<Long, Path> segments = new ConcurrentSkipListMap<>();  // 起始偏移量 -> 分段文件
+    private final LinkedBlockingQueue<ByteBuffer> queue = new LinkedBlockingQueue<>();  // 待写入的记录
+    private final PriorityQueue<ByteBuffer> reorder = new PriorityQueue<>(
+            Comparator.comparingLong(record -> record.getLong(4)));  // 已出队但前面还有偏移量没到的记录，只在写线程中使用
+    private final AtomicInteger readerCount = new AtomicInteger();
+    private final ThreadPoolExecutor readers = new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(64), task -> {
+                Thread thread = new Thread(task, "message-log-reader-" + readerCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());  // 执行重放的读线程
+    private final AtomicLong nextOffset = new AtomicLong();  // 下一条消息的偏移量
+    private long writeOffset;  // 下一条要写入的偏移量，只在写线程中使用
+    private volatile long flushedOffset;  // 已写入磁盘的消息之后的偏移量
+    private volatile boolean failed;  // 写入失败且无法回滚，之后不再记录消息
+    private FileChannel channel;  // 当前分段文件，只在写线程中使用
+    private long segmentSize;  // 当前分段文件大小，只在写线程中使用
+
+    public MessageLog(Path directory, long segmentBytes, int maxSegments) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * 打开日志并启动后台写线程
+     * 作用：找出已有的分段文件，检查最后一个分段的末尾，恢复下一条消息的偏移量
+     * @throws IOException 读取或创建文件失败
+     */
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    Log.info("忽略无法识别的消息日志文件：" + name);
+                }
+            }
+        }
+
+        if (segments.isEmpty()) {
+            openSegment(0);
+        } else {
+            Map.Entry<Long, Path> last = segments.lastEntry();
+            long[] end = {last.getKey()};
+            long validLength = scan(last.getValue(), (offset, room, message) -> {
+                end[0] = offset + 1;
+                return true;
+            });
+            channel = FileChannel.open(last.getValue(), StandardOpenOption.WRITE);
+            long size = channel.size();
+            if (validLength < size) {
+                // 截掉的部分最多有这么多条记录，跳过它们可能用过的偏移量
+                long skipped = (size - validLength + MIN_RECORD_BYTES - 1) / MIN_RECORD_BYTES;
+                Log.warn("消息日志末尾有不完整的记录，已截断，跳过 " + skipped + " 个偏移量");
+                channel.truncate(validLength);
+                channel.force(true);
+                end[0] += skipped;
+            }
+            channel.position(validLength);
+            segmentSize = validLength;
+            nextOffset.set(end[0]);
+        }
+        writeOffset = nextOffset.get();
+        flushedOffset = writeOffset;
+        Log.info("消息日志已打开，共 " + segments.size() + " 个分段，下一条消息偏移量：" + writeOffset);
+
+        Thread writer = new Thread(this::writeLoop, "message-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * 追加一条消息
+     * 作用：分配偏移量并放入写队列后立即返回，不等待写入磁盘；
+     *      消息内容超过长度上限时截断，保证每条记录回放时都能读出来
+     * @param room 房间名
+     * @param message 消息内容
+     * @return 分配的偏移量，日志已停止写入时返回-1
+     */
+    public long append(String room, String message) {
+        if (failed) {
+            return -1;
+        }
+        byte[] roomBytes = truncate(room.getBytes(StandardCharsets.UTF_8), MAX_ROOM_BYTES);
+        byte[] messageBytes = truncate(message.getBytes(StandardCharsets.UTF_8), MAX_MESSAGE_BYTES);
+        ByteBuffer record = ByteBuffer.allocate(4 + HEADER_BYTES + roomBytes.length + messageBytes.length);
+        record.putInt(HEADER_BYTES + roomBytes.length + messageBytes.length);
+        record.putLong(0);
+        record.putInt(0);
+        record.putShort((short) roomBytes.length);
+        record.put(roomBytes).put(messageBytes);
+        // 分配偏移量后立即入队，中间没有会失败的操作，写线程不会永远等一个缺失的偏移量
+        long offset = nextOffset.getAndIncrement();
+        record.putLong(4, offset);
+        record.putInt(12, (int) crc(record));
+        record.flip();
+        queue.add(record);
+        return offset;
+    }
+
+    /**
+     * 截断过长的UTF-8字节，不拆开多字节字符
+     * @param bytes UTF-8字节
+     * @param max 最大长度
+     * @return 不超过max的字节
+     */
+    private static byte[] truncate(byte[] bytes, int max) {
+        if (bytes.length <= max) {
+            return bytes;
+        }
+        int length = max;
+        while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;  // bytes[length]是多字节字符的后续字节，截断点往前移到字符开头
+        }
+        Log.warn("消息过长，记录到消息日志时截断为 " + length + " 字节");
+        return Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * 下一条消息的偏移量
+     * @return 偏移量
+     */
+    public long nextOffset() {
+        return nextOffset.get();
+    }
+
+    /**
+     * 从指定偏移量开始顺序读取已写入磁盘的消息
+     * 作用：找到包含该偏移量的分段，从分段开头顺序读，跳过之前的记录，读完再读下一个分段
+     * @param fromOffset 起始偏移量（包含）
+     * @param reader 接收消息，返回false时停止
+     * @throws IOException 读取失败
+     */
+    public void read(long fromOffset, Reader reader) throws IOException {
+        long end = flushedOffset;
+        Long base = segments.floorKey(fromOffset);
+        if (base == null) {
+            base = segments.firstKey();  // 请求的消息已被删除，从最早的消息开始
+        }
+        boolean[] stopped = {false};
+        for (Path segment : segments.tailMap(base).values()) {
+            try {
+                scan(segment, (offset, room, message) -> {
+                    if (offset >= end) {
+                        stopped[0] = true;
+                    } else if (offset >= fromOffset && !reader.accept(offset, room, message)) {
+                        stopped[0] = true;
+                    }
+                    return !stopped[0];
+                });
+            } catch (NoSuchFileException e) {
+                continue;  // 读取期间分段被删除
+            }
+            if (stopped[0]) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 在读线程中执行read
+     * @param fromOffset 起始偏移量（包含）
+     * @param reader 接收消息，返回false时停止
+     * @return 读取完成后完成的Future；读线程繁忙时以RejectedExecutionException异常完成
+     */
+    public CompletableFuture<Void> readAsync(long fromOffset, Reader reader) {
+        try {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    read(fromOffset, reader);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, readers);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 顺序扫描一个分段文件
+     * @param segment 分段文件
+     * @param reader 接收消息，返回false时停止
+     * @return 最后一条完整记录结束的位置
+     */
+    private static long scan(Path segment, Reader reader) throws IOException {
+        long position = 0;
+        try (InputStream file = Files.newInputStream(segment);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file, 64 * 1024))) {
+            while (true) {
+                ByteBuffer record;
+                try {
+                    int length = in.readInt();
+                    if (length < HEADER_BYTES || length > MAX_RECORD_BYTES) {
+                        break;
+                    }
+                    record = ByteBuffer.allocate(4 + length).putInt(length);
+                    in.readFully(record.array(), 4, length);
+                } catch (EOFException e) {
+                    break;  // 写了一半的记录，或者写线程还没有写完
+                }
+                long offset = record.getLong(4);
+                int expected = record.getInt(12);
+                record.putInt(12, 0);
+                if ((int) crc(record) != expected) {
+                    break;
+                }
+                int roomLength = record.getShort(16);
+                int messageStart = 4 + HEADER_BYTES + roomLength;
+                if (roomLength < 0 || messageStart > record.capacity()) {
+                    break;
+                }
+                byte[] bytes = record.array();
+                String room = new String(bytes, 4 + HEADER_BYTES, roomLength, StandardCharsets.UTF_8);
+                String message = new String(bytes, messageStart, bytes.length - messageStart, StandardCharsets.UTF_8);
+                position += bytes.length;
+                if (!reader.accept(offset, room, message)) {
+                    break;
+                }
+            }
+        }
+        return position;
+    }
+
+    /**
+     * 写线程循环
+     * 作用：取出一批记录，按偏移量排好后把连续的部分一起写入并force，当前分段写满时换新分段；
+     *      前面的偏移量还没入队时先留在reorder中，等它到了再写
+     */
+    private void writeLoop() {
+        List<ByteBuffer> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            try {
+                ByteBuffer first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                reorder.add(first);
+                queue.drainTo(reorder, MAX_BATCH - 1);
+                while (takeInOrder(batch)) {
+                    write(batch);
+                    batch.clear();
+                }
+                if (failed) {
+                    queue.clear();
+                    reorder.clear();
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 从reorder中按顺序取出偏移量连续的记录
+     * @param batch 接收记录
+     * @return 取到记录时返回true
+     */
+    private boolean takeInOrder(List<ByteBuffer> batch) {
+        while (batch.size() < MAX_BATCH && !reorder.isEmpty() && reorder.peek().getLong(4) == writeOffset) {
+            batch.add(reorder.poll());
+            writeOffset++;
+        }
+        return !batch.isEmpty();
+    }
+
+    /**
+     * 批量写入
+     * 作用：写入失败时把文件截断回这一批开始的位置，不留下写了一半的记录，这一批的偏移量作废不再使用；
+     *      否则之后的记录接在坏记录后面，重放和重启时读到坏记录就停止。连截断也失败时停止记录消息
+     */
+    private void write(List<ByteBuffer> batch) {
+        long start = -1;
+        try {
+            if (segmentSize >= segmentBytes) {
+                channel.force(true);
+                channel.close();
+                openSegment(batch.get(0).getLong(4));
+            }
+            start = segmentSize;
+            ByteBuffer[] buffers = batch.toArray(new ByteBuffer[0]);
+            long remaining = 0;
+            for (ByteBuffer buffer : buffers) {
+                remaining += buffer.remaining();
+            }
+            segmentSize += remaining;
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+            channel.force(false);
+            flushedOffset = batch.get(batch.size() - 1).getLong(4) + 1;
+        } catch (IOException e) {
+            Log.warn("写入消息日志失败，丢弃 " + batch.size() + " 条消息：" + e.getMessage());
+            rollback(start);
+        }
+    }
+
+    /**
+     * 把当前分段截断回一批记录开始的位置
+     * @param start 这一批开始时的分段长度，换分段失败时为-1
+     */
+    private void rollback(long start) {
+        try {
+            if (start < 0 || channel == null || !channel.isOpen()) {
+                throw new IOException("当前分段不可用");
+            }
+            channel.truncate(start);
+            channel.position(start);
+            channel.force(true);
+            segmentSize = start;
+        } catch (IOException e) {
+            Log.error("无法回滚消息日志，停止记录聊天消息：" + e.getMessage());
+            failed = true;
+        }
+    }
+
+    /**
+     * 创建新的分段文件，并删除超过保留数量的旧分段
+     * @param baseOffset 新分段第一条消息的偏移量
+     */
+    private void openSegment(long baseOffset) throws IOException {
+        Path file = directory.resolve(String.format("%020d", baseOffset) + SUFFIX);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        segmentSize = 0;
+        segments.put(baseOffset, file);
+        while (maxSegments > 0 && segments.size() > maxSegments) {
+            Map.Entry<Long, Path> oldest = segments.pollFirstEntry();
+            Files.deleteIfExists(oldest.getValue());
+        }
+    }
+
+    /**
+     * 计算一条记录的CRC32校验值（计算时CRC字段本身为0）
+     */
+    private static long crc(ByteBuffer record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, record.capacity());
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,194 @@
+package chatroom;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * NioServer类 - 基于Selector的NIO服务器
+ * 作用：用一个线程通过Selector管理所有客户端连接，
+ *      不再为每个客户端创建线程，适合大量在线用户的场景
+ * 知识点：
+ * 1. Selector - 多路复用器，一个线程监听多个通道的事件
+ * 2. ServerSocketChannel/SocketChannel - 可以设置为非阻塞模式的套接字通道
+ * 3. 事件驱动 - OP_ACCEPT（新连接）、OP_READ（可读）、OP_WRITE（可写）
+ * 4. 延迟写出 - 事件循环中产生的待发送消息在本轮事件处理完后统一写出，
+ *    一轮中发给同一个客户端的多条消息合并成一次写
+ */
+public class NioServer {
+    private static Selector selector;  // 多路复用器
+    private static ServerSocketChannel serverChannel;  // 服务器通道
+    private static Thread selectorThread;  // 运行事件循环的线程
+    private static volatile boolean isRunning = true;  // 服务器运行状态
+    private static final Queue<NioSession> pendingFlush = new ConcurrentLinkedQueue<>();  // 等待写出的会话
+    private static final Queue<NioSession> pendingClose = new ConcurrentLinkedQueue<>();  // 等待关闭的会话
+    private static final Queue<NioSession> pendingResume = new ConcurrentLinkedQueue<>();  // 等待恢复读取的会话
+
+    /**
+     * 启动NIO服务器
+     * 作用：打开Selector和服务器通道，进入事件循环
+     * @param port 监听端口
+     */
+    public static void startServer(int port) {
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            selectorThread = Thread.currentThread();
+            Log.info("服务器启动成功（NIO模式），监听端口：" + port);
+            Log.info("等待客户端连接...");
+
+            // 事件循环
+            while (isRunning) {
+                selector.select();
+
+                // 处理其他线程提交的写请求
+                NioSession session;
+                while ((session = pendingFlush.poll()) != null) {
+                    session.flush();
+                }
+                while ((session = pendingClose.poll()) != null) {
+                    session.close();
+                }
+                while ((session = pendingResume.poll()) != null) {
+                    session.resume();
+                }
+
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    handleKey(key);
+                }
+
+                // 写出本轮处理消息时产生的数据
+                while ((session = pendingFlush.poll()) != null) {
+                    session.flush();
+                }
+            }
+        } catch (IOException e) {
+            if (isRunning) {
+                Log.error("服务器启动失败：" + e.getMessage());
+            }
+        } finally {
+            try {
+                if (selector != null) selector.close();
+            } catch (IOException e) {
+                Log.warn("关闭Selector时出错：" + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 处理一个就绪的事件
+     * @param key 就绪的SelectionKey
+     */
+    private static void handleKey(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+
+        NioSession session = (NioSession) key.attachment();
+        try {
+            if (key.isReadable()) {
+                session.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                session.flush();
+            }
+        } catch (IOException e) {
+            Log.warn("客户端连接异常：" + e.getMessage());
+            session.close();
+        }
+    }
+
+    /**
+     * 接受新连接
+     * 作用：把新的SocketChannel设置为非阻塞并注册到Selector上
+     */
+    private static void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, ServerConfig.TCP_NODELAY);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            NioSession session = new NioSession(channel, key);
+            key.attach(session);
+            Server.addClient(session);
+            Log.info("客户端连接成功：" + channel.getRemoteAddress());
+        } catch (IOException e) {
+            Log.warn("接受客户端连接时出错：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 请求写出会话的待发送数据
+     * 作用：放入待写出队列；在Selector线程中等本轮事件处理完再写，其他线程则唤醒Selector
+     * @param session 有数据待发送的会话
+     */
+    static void requestFlush(NioSession session) {
+        pendingFlush.add(session);
+        if (Thread.currentThread() != selectorThread) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * 请求关闭会话
+     * 作用：发送队列满且策略为断开时调用，关闭操作统一交给Selector线程执行
+     * @param session 要关闭的会话
+     */
+    static void requestClose(NioSession session) {
+        if (Thread.currentThread() == selectorThread) {
+            session.close();
+        } else {
+            pendingClose.add(session);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * 请求恢复会话的读取
+     * 作用：登录等异步处理完成后调用。即使在Selector线程中也放入队列，
+     *      避免在processLines执行过程中重入
+     * @param session 要恢复读取的会话
+     */
+    static void requestResume(NioSession session) {
+        pendingResume.add(session);
+        selector.wakeup();
+    }
+
+    /**
+     * 停止NIO服务器
+     * 作用：退出事件循环，关闭服务器通道（Selector由事件循环线程自己关闭）
+     */
+    public static void stopServer() {
+        isRunning = false;
+        try {
+            if (selector != null) {
+                selector.wakeup();
+            }
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            Log.warn("关闭服务器时出错：" + e.getMessage());
+        }
+    }
+}
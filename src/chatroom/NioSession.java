@@ -0,0 +1,294 @@
+package chatroom;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * NioSession类 - NIO模式下的客户端会话
+ * 作用：保存一个SocketChannel的读写缓冲区和用户状态，
+ *      负责把读到的字节按行切分成消息，以及把待发送的消息写回客户端
+ * 知识点：
+ * 1. ByteBuffer - 非阻塞读写使用的字节缓冲区
+ * 2. 行解码 - 一次read可能读到半行或多行，需要自己找换行符
+ * 3. 写队列 - 非阻塞写可能一次写不完，剩余数据等OP_WRITE事件再写，
+ *    写队列是有界的OutboundQueue，队列满时按慢消费者策略处理
+ * 4. 聚集写 - 一次从写队列取出多条消息，用write(ByteBuffer[])一个系统调用写出；
+ *    同一轮事件循环中多次请求写出只会真正写一次
+ */
+public final class NioSession implements ChatSession {
+    private static final int INITIAL_BUFFER_SIZE = 4096;  // 读缓冲区初始大小
+
+    private final SocketChannel channel;  // 客户端通道
+    private final SelectionKey key;  // 在Selector上注册得到的key
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);  // 读缓冲区
+    private final OutboundQueue<EncodedMessage> writeQueue = new OutboundQueue<>();  // 待发送数据
+    private boolean paused;  // 是否因等待异步处理而暂停读取，只在Selector线程访问
+    private final ByteBuffer[] writeBatch = new ByteBuffer[ServerConfig.WRITE_BATCH];  // 正在写出的数据，只在Selector线程访问
+    private final EncodedMessage[] writeMessages = new EncodedMessage[ServerConfig.WRITE_BATCH];  // writeBatch对应的消息，用于统计送达延迟
+    private int batchStart;  // writeBatch中第一个还没写完的下标
+    private int batchEnd;  // writeBatch中有效数据的结束下标
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();  // 是否已经请求过写出
+    private volatile String room;  // 当前所在房间
+    private volatile String username;  // 当前会话的用户名
+    private volatile boolean isConnected = true;  // 连接状态
+    private final AtomicBoolean closed = new AtomicBoolean();  // 是否已关闭
+    private final Heartbeat heartbeat;  // 心跳和超时检查
+    private final RateLimiter rateLimiter;  // 发送速率和登录失败次数限制
+    private volatile boolean compress;  // 是否已协商压缩
+
+    public NioSession(SocketChannel channel, SelectionKey key) {
+        this.channel = channel;
+        this.key = key;
+        this.rateLimiter = new RateLimiter(remoteAddress(channel));
+        this.heartbeat = Heartbeat.watch(this, () -> NioServer.requestClose(this));
+    }
+
+    /**
+     * 读取客户端数据
+     * 作用：由Selector线程在OP_READ就绪时调用，读出所有完整的行并交给MessageHandler处理
+     * @throws IOException 读取失败或客户端关闭连接
+     */
+    void read() throws IOException {
+        int count = channel.read(readBuffer);
+        if (count < 0) {
+            // 客户端关闭了连接
+            close();
+            return;
+        }
+        ServerMetrics.bytesRead(count);
+        heartbeat.touch();
+        processLines();
+    }
+
+    /**
+     * 处理读缓冲区中的完整行
+     * 作用：逐行交给MessageHandler；遇到异步处理的消息（登录、注册）时暂停读取，
+     *      剩余的数据留在缓冲区，等处理完成后由resume()继续，保证同一连接的消息按顺序处理
+     */
+    private void processLines() {
+        readBuffer.flip();
+        int lineStart = readBuffer.position();
+        for (int i = lineStart; i < readBuffer.limit() && !paused; i++) {
+            if (readBuffer.get(i) == '\n') {
+                String message = decodeLine(lineStart, i);
+                readBuffer.position(i + 1);
+                lineStart = i + 1;
+                Log.debug("收到客户端消息：", message);
+                CompletableFuture<Void> done = MessageHandler.handleMessage(this, message);
+                if (!isConnected) {
+                    return;
+                }
+                if (!done.isDone()) {
+                    pause(done);
+                }
+            }
+        }
+        readBuffer.compact();
+
+        // 缓冲区已满但还没有读到换行符，扩容或断开
+        if (!paused && !readBuffer.hasRemaining()) {
+            if (readBuffer.capacity() >= ProtocolCodec.MAX_LINE_LENGTH) {
+                Log.warn("客户端消息过长，断开连接");
+                close();
+                return;
+            }
+            ByteBuffer bigger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+            readBuffer.flip();
+            bigger.put(readBuffer);
+            readBuffer = bigger;
+        }
+    }
+
+    /**
+     * 暂停读取
+     * 作用：取消关注OP_READ，异步处理完成后通知Selector线程恢复
+     * @param pending 正在异步处理的消息
+     */
+    private void pause(CompletableFuture<Void> pending) {
+        paused = true;
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        pending.whenComplete((result, error) -> NioServer.requestResume(this));
+    }
+
+    /**
+     * 恢复读取
+     * 作用：只在Selector线程中调用，先处理暂停期间留在缓冲区中的消息，再重新关注OP_READ
+     */
+    void resume() {
+        if (!isConnected) {
+            return;
+        }
+        paused = false;
+        processLines();
+        if (isConnected && !paused) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * 把缓冲区中[start, end)范围的字节解码为一行字符串，去掉行尾的\r
+     */
+    private String decodeLine(int start, int end) {
+        if (end > start && readBuffer.get(end - 1) == '\r') {
+            end--;
+        }
+        byte[] bytes = new byte[end - start];
+        readBuffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 发送消息给客户端
+     * 作用：把已编码的消息放入写队列，由Selector线程负责真正写出
+     * 知识点：其他线程调用时不能直接操作SelectionKey，需要通知Selector线程
+     * @param message 已编码的消息
+     */
+    @Override
+    public void sendEncoded(EncodedMessage message) {
+        if (!isConnected) {
+            return;
+        }
+        if (compress) {
+            message = message.compressed();
+        }
+        if (!writeQueue.offer(message)) {
+            Log.warn("客户端 " + username + " 接收过慢，发送队列已满，断开连接");
+            NioServer.requestClose(this);
+            return;
+        }
+        // 已经请求过写出时不再重复请求，flush会把队列中的消息一起写出
+        if (flushScheduled.compareAndSet(false, true)) {
+            NioServer.requestFlush(this);
+        }
+    }
+
+    /**
+     * 写出队列中的数据
+     * 作用：只在Selector线程中调用，每次从写队列取出一批消息聚集写出，尽量把写队列中的数据写完，
+     *      写不完时关注OP_WRITE事件，写完后取消关注
+     */
+    void flush() {
+        // 先清除标记再取队列，之后放入的消息会重新请求写出，不会遗漏
+        flushScheduled.set(false);
+        if (!isConnected) {
+            return;
+        }
+        try {
+            // 正在写的数据不放在队列里，避免DROP_OLDEST策略丢掉写了一半的消息
+            while (true) {
+                if (batchStart == batchEnd) {
+                    batchStart = 0;
+                    batchEnd = 0;
+                    EncodedMessage next;
+                    while (batchEnd < writeBatch.length && (next = writeQueue.poll()) != null) {
+                        // 共享同一块已编码的内存，只是读取位置独立
+                        writeMessages[batchEnd] = next;
+                        writeBatch[batchEnd++] = next.buffer();
+                    }
+                    if (batchEnd == 0) {
+                        break;
+                    }
+                    WriteStats.recordMessages(batchEnd);
+                }
+                long written = channel.write(writeBatch, batchStart, batchEnd - batchStart);
+                WriteStats.recordWrite(written);
+                long now = System.nanoTime();
+                while (batchStart < batchEnd && !writeBatch[batchStart].hasRemaining()) {
+                    writeMessages[batchStart].recordDelivered(now);
+                    writeMessages[batchStart] = null;
+                    writeBatch[batchStart++] = null;
+                }
+                if (batchStart < batchEnd) {
+                    // 内核发送缓冲区已满，等待下一次可写事件
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            Log.warn("发送消息失败：" + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * 关闭连接
+     * 作用：取消Selector注册，关闭通道，并从服务器客户端列表中移除
+     */
+    void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        isConnected = false;
+        heartbeat.cancel();
+        writeQueue.clear();
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.warn("关闭连接时出错：" + e.getMessage());
+        } finally {
+            Server.removeClient(this);
+        }
+    }
+
+    @Override
+    public int getOutboundQueueSize() {
+        return writeQueue.size();
+    }
+
+    @Override
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    @Override
+    public boolean enableCompression() {
+        compress = true;
+        return true;
+    }
+
+    /**
+     * 取得客户端的IP地址
+     * @return IP地址，通道已关闭时返回null
+     */
+    private static String remoteAddress(SocketChannel channel) {
+        try {
+            return channel.getRemoteAddress() instanceof InetSocketAddress address
+                    ? address.getAddress().getHostAddress() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return isConnected;
+    }
+
+    @Override
+    public String getRoom() {
+        return room;
+    }
+
+    @Override
+    public void setRoom(String room) {
+        this.room = room;
+    }
+}
@@ -0,0 +1,143 @@
+package chatroom;
+
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OutboundQueue类 - 有界发送队列
+ * 作用：每个客户端一个发送队列，广播时只把消息放入队列就返回，
+ *      由该客户端自己的写线程（或NIO的Selector线程）负责真正写出。
+ *      队列满时按慢消费者策略处理，发送者永远不会被某个慢客户端拖住
+ * 知识点：
+ * 1. ArrayBlockingQueue - 基于数组的有界阻塞队列
+ * 2. 生产者消费者模型 - 广播线程是生产者，写线程是消费者
+ * 3. LongAdder - 高并发下比AtomicLong更快的计数器
+ */
+public class OutboundQueue<T> {
+
+    /**
+     * 慢消费者策略
+     * DROP_OLDEST：丢弃队列中最旧的消息，保证客户端看到最新消息
+     * DROP_NEWEST：丢弃新来的消息
+     * DISCONNECT：断开该客户端
+     */
+    public enum Policy {
+        DROP_OLDEST, DROP_NEWEST, DISCONNECT
+    }
+
+    private static final LongAdder totalDropped = new LongAdder();  // 所有队列丢弃的消息总数
+    private static final LongAdder totalDisconnects = new LongAdder();  // 因队列满被断开的客户端总数
+
+    private final ArrayBlockingQueue<T> queue;  // 待发送的消息
+    private final Policy policy;  // 队列满时的处理策略
+    private final AtomicLong dropped = new AtomicLong();  // 本队列丢弃的消息数
+
+    public OutboundQueue(int capacity, Policy policy) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.policy = policy;
+    }
+
+    /**
+     * 使用ServerConfig中的容量和策略创建队列
+     */
+    public OutboundQueue() {
+        this(ServerConfig.OUTBOUND_CAPACITY, ServerConfig.outboundPolicy());
+    }
+
+    /**
+     * 放入一条待发送消息（不会阻塞）
+     * @param item 待发送的消息
+     * @return false表示队列已满且策略为DISCONNECT，调用者应断开该客户端
+     */
+    public boolean offer(T item) {
+        if (queue.offer(item)) {
+            return true;
+        }
+        switch (policy) {
+            case DROP_OLDEST:
+                // 挤掉最旧的一条，直到放入成功（其他线程可能同时在放）
+                do {
+                    if (queue.poll() != null) {
+                        recordDrop();
+                    }
+                } while (!queue.offer(item));
+                return true;
+            case DROP_NEWEST:
+                recordDrop();
+                return true;
+            default:
+                totalDisconnects.increment();
+                return false;
+        }
+    }
+
+    private void recordDrop() {
+        dropped.incrementAndGet();
+        totalDropped.increment();
+    }
+
+    /**
+     * 取出一条消息，队列为空时阻塞等待
+     * @return 消息
+     * @throws InterruptedException 写线程被中断（连接关闭）
+     */
+    public T take() throws InterruptedException {
+        return queue.take();
+    }
+
+    /**
+     * 取出一条消息，队列为空时返回null
+     * @return 消息或null
+     */
+    public T poll() {
+        return queue.poll();
+    }
+
+    /**
+     * 一次取出多条消息
+     * @param target 存放取出的消息
+     * @param maxItems 最多取出多少条
+     * @return 实际取出的条数
+     */
+    public int drainTo(Collection<? super T> target, int maxItems) {
+        return queue.drainTo(target, maxItems);
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    public void clear() {
+        queue.clear();
+    }
+
+    /**
+     * 获取本队列丢弃的消息数
+     * @return 丢弃数
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * 获取所有队列丢弃的消息总数
+     * @return 丢弃总数
+     */
+    public static long getTotalDropped() {
+        return totalDropped.sum();
+    }
+
+    /**
+     * 获取因发送队列满被断开的客户端总数
+     * @return 断开次数
+     */
+    public static long getTotalDisconnects() {
+        return totalDisconnects.sum();
+    }
+}
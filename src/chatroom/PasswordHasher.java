@@ -0,0 +1,91 @@
+package chatroom;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * PasswordHasher类 - 密码哈希工具
+ * 作用：用加盐的PBKDF2算法把密码转换成凭证字符串保存，登录时重新计算并比较，
+ *      文件里不再保存明文密码
+ * 凭证格式：pbkdf2$迭代次数$盐(Base64)$哈希值(Base64)
+ * 知识点：
+ * 1. 加盐 - 每个用户随机生成盐，相同密码得到不同的哈希值
+ * 2. 慢哈希 - 多次迭代增加暴力破解的成本，计算一次需要几十毫秒，所以放到AuthService线程池执行
+ * 3. 常量时间比较 - MessageDigest.isEqual避免通过比较耗时猜测内容
+ */
+public class PasswordHasher {
+    private static final String PREFIX = "pbkdf2$";  // 凭证前缀
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";  // 哈希算法
+    private static final int SALT_BYTES = 16;  // 盐的字节数
+    private static final int HASH_BITS = 256;  // 哈希值的位数
+    private static final SecureRandom random = new SecureRandom();
+
+    /**
+     * 计算密码的凭证
+     * @param password 明文密码
+     * @return 凭证字符串
+     */
+    public static String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        int iterations = ServerConfig.AUTH_ITERATIONS;
+        byte[] hash = pbkdf2(password, salt, iterations);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    /**
+     * 验证密码
+     * 作用：兼容旧数据，凭证不是pbkdf2格式时按明文比较
+     * @param password 用户输入的明文密码
+     * @param credential 保存的凭证
+     * @return 是否匹配
+     */
+    public static boolean verify(String password, String credential) {
+        if (password == null || credential == null) {
+            return false;
+        }
+        if (!isHashed(credential)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                    credential.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = credential.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        try {
+            int iterations = Integer.parseInt(parts[1]);
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] salt = decoder.decode(parts[2]);
+            byte[] expected = decoder.decode(parts[3]);
+            return MessageDigest.isEqual(expected, pbkdf2(password, salt, iterations));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 判断凭证是否已经是哈希格式
+     * @param credential 凭证
+     * @return 不是明文时返回true
+     */
+    public static boolean isHashed(String credential) {
+        return credential.startsWith(PREFIX);
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("不支持的哈希算法：" + ALGORITHM, e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package chatroom;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PresenceTracker类 - 在线状态
+ * 作用：维护带版本号的在线用户集合；GET_USERS直接返回缓存的在线列表，
+ *      只有集合变化之后第一次请求时才重新生成；订阅了在线状态的客户端在用户上线、下线时
+ *      收到一行增量通知，不需要反复轮询整个列表
+ * 知识点：
+ * 1. 版本号 - 每次上线、下线版本号加一，缓存的列表记录生成时的版本，版本不同就是过期了
+ * 2. 延迟重建 - 连续多次上下线只会在下一次GET_USERS时重建一次
+ * 3. 引用计数 - 同一个用户可能同时在本节点和其他节点（联邦模式）在线，计数归零才算下线
+ * 4. 增量推送 - 通知只编码一次，所有订阅者共享同一个EncodedMessage
+ */
+public class PresenceTracker {
+
+    /**
+     * 缓存的在线列表
+     */
+    private static final class Snapshot {
+        final long version;  // 生成时的版本号
+        final EncodedMessage message;  // 已编码的在线列表
+
+        Snapshot(long version, EncodedMessage message) {
+            this.version = version;
+            this.message = message;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Integer> online = new ConcurrentHashMap<>();  // 用户名 -> 在线来源数
+    private final AtomicLong version = new AtomicLong();  // 在线集合的版本号
+    private final Set<ChatSession> subscribers = ConcurrentHashMap.newKeySet();  // 订阅了增量通知的会话
+    private volatile Snapshot snapshot = new Snapshot(0, EncodedMessage.shared("在线用户："));  // 缓存的在线列表
+
+    /**
+     * 用户上线
+     * @param username 用户名
+     */
+    public void online(String username) {
+        if (online.merge(username, 1, Integer::sum) == 1) {
+            version.incrementAndGet();
+            push(EncodedMessage.shared("用户上线：" + username));
+        }
+    }
+
+    /**
+     * 用户下线
+     * @param username 用户名
+     */
+    public void offline(String username) {
+        boolean[] removed = {false};
+        online.computeIfPresent(username, (key, count) -> {
+            if (count > 1) {
+                return count - 1;
+            }
+            removed[0] = true;
+            return null;
+        });
+        if (removed[0]) {
+            version.incrementAndGet();
+            push(EncodedMessage.shared("用户下线：" + username));
+        }
+    }
+
+    /**
+     * 获取在线列表
+     * 作用：版本没有变化时直接返回缓存；变化了则重新生成，多个线程同时发现过期时只有一个重建
+     * @return 形如 "在线用户：a b " 的已编码消息
+     */
+    public EncodedMessage snapshot() {
+        Snapshot current = snapshot;
+        if (current.version == version.get()) {
+            return current.message;
+        }
+        synchronized (this) {
+            current = snapshot;
+            long latest = version.get();
+            if (current.version != latest) {
+                // 先读版本号再遍历，遍历期间又有变化时下一次请求会再重建
+                StringBuilder userList = new StringBuilder("在线用户：");
+                for (String username : online.keySet()) {
+                    userList.append(username).append(" ");
+                }
+                current = new Snapshot(latest, EncodedMessage.shared(userList.toString()));
+                snapshot = current;
+            }
+            return current.message;
+        }
+    }
+
+    /**
+     * 订阅增量通知
+     * @param session 会话
+     */
+    public void subscribe(ChatSession session) {
+        subscribers.add(session);
+    }
+
+    /**
+     * 取消订阅
+     * @param session 会话
+     */
+    public void unsubscribe(ChatSession session) {
+        subscribers.remove(session);
+    }
+
+    /**
+     * 获取版本号
+     * @return 版本号
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * 获取在线人数
+     * @return 人数
+     */
+    public int size() {
+        return online.size();
+    }
+
+    private void push(EncodedMessage delta) {
+        for (ChatSession subscriber : subscribers) {
+            if (subscriber.isConnected()) {
+                subscriber.sendEncoded(delta);
+            }
+        }
+    }
+}
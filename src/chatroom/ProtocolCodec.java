@@ -0,0 +1,190 @@
+package chatroom;
+
+/**
+ * ProtocolCodec类 - 聊天协议编解码
+ * 作用：服务器和客户端共用的协议格式，一行就是一条消息：
+ *      命令带参数时为 COMMAND:key1=value1&key2=value2，例如 LOGIN:username=zhangsan&password=a123
+ *      命令不带参数时为 COMMAND，例如 GET_USERS；不带参数的命令也可以加参数，例如 GET_USERS:id=3
+ *      请求带 id 参数时，服务器对它的回复是 REPLY:id=3&text=回复内容，客户端按编号对应请求
+ *      聊天消息也是一条命令：MSG:text=大家好 发给当前房间，MSG:to=lisi&text=你好 是私聊，
+ *      聊天内容放在参数值中，内容是 "PING"、"ROOMS" 或以 "LOGIN:" 开头时也不会被当作命令；
+ *      不是任何命令的一行仍当作聊天消息（兼容直接用telnet发送的旧客户端），客户端应始终使用MSG
+ *      参数值中的 % & = 会被转义为 %25 %26 %3D
+ * 知识点：
+ * 1. 枚举 - 用枚举表示所有命令，避免到处写字符串常量
+ * 2. 原地扫描 - 直接在原字符串上按下标查找，不使用split，不产生中间数组和子串，
+ *    只有真正取出的参数值才会创建字符串
+ * 3. 转义 - 参数值里出现分隔符时也能正确解析
+ */
+public final class ProtocolCodec {
+
+    /**
+     * 协议命令
+     */
+    public enum Command {
+        REGISTER("REGISTER", true),
+        LOGIN("LOGIN", true),
+        GET_USERS("GET_USERS", false),
+        JOIN("JOIN", true),
+        LEAVE("LEAVE", false),
+        ROOMS("ROOMS", false),
+        MSG("MSG", true),
+        RESUME("RESUME", true),
+        OFFSET("OFFSET", false),
+        PRESENCE("PRESENCE", true),
+        STATS("STATS", false),
+        PING("PING", false),
+        PONG("PONG", false),
+        HELLO("HELLO", true),
+        FED_HELLO("FED_HELLO", true),
+        FED_RELAY("FED_RELAY", true),
+        FED_PRESENCE("FED_PRESENCE", true),
+        FED_DM("FED_DM", true),
+        FED_USER("FED_USER", true),
+        REPLY("REPLY", true),
+        CHAT(null, false);
+
+        private final String name;  // 命令名
+        private final boolean hasFields;  // 是否必须带参数（带参数时命令名后面跟冒号）
+
+        Command(String name, boolean hasFields) {
+            this.name = name;
+            this.hasFields = hasFields;
+        }
+
+        /**
+         * 参数部分在一行消息中的起始下标
+         * @return 起始下标，聊天消息CHAT返回0
+         */
+        public int payloadStart() {
+            return name == null ? 0 : name.length() + 1;
+        }
+    }
+
+    public static final int MAX_LINE_LENGTH = 64 * 1024;  // 单行消息最大长度，超过时服务器断开连接
+
+    // values()每次调用都会复制数组，缓存一份
+    private static final Command[] COMMANDS = Command.values();
+
+    private ProtocolCodec() {
+    }
+
+    /**
+     * 识别一行消息的命令
+     * @param line 一行消息
+     * @return 命令，无法识别时当作聊天消息CHAT
+     */
+    public static Command parseCommand(String line) {
+        for (Command command : COMMANDS) {
+            if (command.name == null) {
+                continue;
+            }
+            int n = command.name.length();
+            if (line.length() > n && line.charAt(n) == ':' && line.startsWith(command.name)) {
+                return command;
+            }
+            if (!command.hasFields && line.equals(command.name)) {
+                return command;
+            }
+        }
+        return Command.CHAT;
+    }
+
+    /**
+     * 取出参数值
+     * 作用：在参数部分中查找 key=value，返回解码后的value
+     * @param line 一行消息
+     * @param command 该消息的命令（由parseCommand得到）
+     * @param key 参数名
+     * @return 参数值，不存在时返回null
+     */
+    public static String field(String line, Command command, String key) {
+        int pos = command.payloadStart();
+        int end = line.length();
+        int keyLength = key.length();
+        while (pos < end) {
+            int next = line.indexOf('&', pos);
+            if (next < 0) {
+                next = end;
+            }
+            // 比较参数名，参数名本身不允许出现转义字符
+            if (pos + keyLength < next && line.charAt(pos + keyLength) == '='
+                    && line.regionMatches(pos, key, 0, keyLength)) {
+                return decode(line, pos + keyLength + 1, next);
+            }
+            pos = next + 1;
+        }
+        return null;
+    }
+
+    /**
+     * 解码[start, end)范围内的参数值
+     */
+    private static String decode(String line, int start, int end) {
+        int percent = line.indexOf('%', start);
+        if (percent < 0 || percent >= end) {
+            // 绝大多数值不含转义字符，直接截取
+            return line.substring(start, end);
+        }
+        StringBuilder value = new StringBuilder(end - start);
+        value.append(line, start, percent);
+        for (int i = percent; i < end; i++) {
+            char c = line.charAt(i);
+            if (c == '%' && i + 2 < end) {
+                int high = Character.digit(line.charAt(i + 1), 16);
+                int low = Character.digit(line.charAt(i + 2), 16);
+                if (high >= 0 && low >= 0) {
+                    value.append((char) (high << 4 | low));
+                    i += 2;
+                    continue;
+                }
+            }
+            value.append(c);
+        }
+        return value.toString();
+    }
+
+    /**
+     * 编码一条带参数的命令
+     * @param command 命令
+     * @param keyValues 参数名和参数值交替排列，例如 "username", "zhangsan", "password", "a123"
+     * @return 一行消息
+     */
+    public static String encode(Command command, String... keyValues) {
+        StringBuilder line = new StringBuilder(command.name);
+        if (command.hasFields || keyValues.length > 0) {
+            line.append(':');
+            for (int i = 0; i + 1 < keyValues.length; i += 2) {
+                if (i > 0) {
+                    line.append('&');
+                }
+                line.append(keyValues[i]).append('=');
+                escape(line, keyValues[i + 1]);
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * 转义参数值中的 % & = 并追加到line
+     */
+    private static void escape(StringBuilder line, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '%':
+                    line.append("%25");
+                    break;
+                case '&':
+                    line.append("%26");
+                    break;
+                case '=':
+                    line.append("%3D");
+                    break;
+                default:
+                    line.append(c);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package chatroom;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RateLimiter类 - 发送速率和登录失败次数限制
+ * 作用：每个连接一个，限制聊天消息和私聊的发送速率（每个连接一个令牌桶，另有全服务器共用的一个），
+ *      防止一个客户端刷屏让每条消息都触发一次全房间广播；
+ *      同时限制登录失败次数：同一连接失败太多次后不再接受登录，同一IP地址失败太快时暂时拒绝登录
+ * 知识点：
+ * 1. 令牌桶 - 见TokenBucket，取令牌只是一次CAS
+ * 2. 拒绝或延迟 - reject模式下超速的消息直接丢弃并提示；delay模式下消息延后处理，
+ *    处理完成前不读取这个连接的下一条消息（见MessageHandler），发送方自然被放慢
+ * 3. 先检查后计算 - 被限制的登录请求在计算密码哈希之前就返回，不会消耗认证线程池
+ */
+public class RateLimiter {
+    private static final boolean delayMode = "delay".equalsIgnoreCase(ServerConfig.RATELIMIT_MODE);  // 超速时延迟还是拒绝
+    private static final long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(ServerConfig.RATELIMIT_MAX_DELAY_MILLIS);  // 最多延迟多久，超过时仍然拒绝
+    private static final TokenBucket global = ServerConfig.RATELIMIT_GLOBAL_PER_SECOND > 0
+            ? new TokenBucket(ServerConfig.RATELIMIT_GLOBAL_PER_SECOND, ServerConfig.RATELIMIT_GLOBAL_BURST) : null;  // 全服务器共用的令牌桶
+    private static final ConcurrentHashMap<String, TokenBucket> addressFailures = new ConcurrentHashMap<>();  // IP地址 -> 登录失败令牌桶
+    private static final int MAX_TRACKED_ADDRESSES = 10000;  // 超过这么多个地址时清理已经恢复的桶
+    private static final LongAdder delayed = new LongAdder();  // 被延迟的消息数
+    private static final LongAdder rejected = new LongAdder();  // 被拒绝的消息数
+    private static final LongAdder loginsThrottled = new LongAdder();  // 被拒绝的登录请求数
+
+    private final String address;  // 客户端IP地址，未知时为null
+    private final TokenBucket messages = ServerConfig.RATELIMIT_PER_SECOND > 0
+            ? new TokenBucket(ServerConfig.RATELIMIT_PER_SECOND, ServerConfig.RATELIMIT_BURST) : null;  // 本连接的令牌桶
+    private final AtomicInteger loginFailures = new AtomicInteger();  // 本连接的登录失败次数
+
+    public RateLimiter(String address) {
+        this.address = address;
+    }
+
+    /**
+     * 一条聊天消息或私聊是否可以发送
+     * 作用：先取本连接的令牌再取全服务器的令牌；全服务器的桶拒绝时把本连接的令牌退还，
+     *      被拒绝的消息不会消耗发送者自己的额度
+     * @return 0表示马上发送；大于0表示延迟这么多纳秒后发送；-1表示拒绝
+     */
+    public long admitMessage() {
+        long wait;
+        if (delayMode) {
+            long own = messages == null ? 0 : messages.reserve(maxDelayNanos);
+            long shared = own < 0 || global == null ? 0 : global.reserve(maxDelayNanos);
+            if (own >= 0 && shared < 0 && messages != null) {
+                messages.refund();
+            }
+            wait = own < 0 || shared < 0 ? -1 : Math.max(own, shared);
+        } else {
+            boolean allowed = messages == null || messages.tryAcquire() == 0;
+            if (allowed && global != null && global.tryAcquire() != 0) {
+                if (messages != null) {
+                    messages.refund();
+                }
+                allowed = false;
+            }
+            wait = allowed ? 0 : -1;
+        }
+        if (wait < 0) {
+            rejected.increment();
+        } else if (wait > 0) {
+            delayed.increment();
+        }
+        return wait;
+    }
+
+    /**
+     * 检查是否可以尝试登录
+     * @return 可以时返回null，否则返回拒绝的原因
+     */
+    public String checkLogin() {
+        String reason = null;
+        if (ServerConfig.LOGIN_MAX_FAILURES > 0 && loginFailures.get() >= ServerConfig.LOGIN_MAX_FAILURES) {
+            reason = "登录失败：本连接失败次数过多，请重新连接";
+        } else if (address != null && ServerConfig.LOGIN_ADDRESS_FAILURES > 0) {
+            TokenBucket bucket = addressFailures.get(address);
+            if (bucket != null && bucket.timeUntilAvailable() > 0) {
+                reason = "登录失败：尝试次数过多，请稍后再试";
+            }
+        }
+        if (reason != null) {
+            loginsThrottled.increment();
+        }
+        return reason;
+    }
+
+    /**
+     * 记录一次登录失败
+     */
+    public void loginFailed() {
+        loginFailures.incrementAndGet();
+        if (address == null || ServerConfig.LOGIN_ADDRESS_FAILURES <= 0) {
+            return;
+        }
+        if (addressFailures.size() > MAX_TRACKED_ADDRESSES) {
+            addressFailures.values().removeIf(TokenBucket::isIdle);
+        }
+        // 每个地址在 login.addressWindowSeconds 内最多失败 login.addressFailures 次
+        addressFailures.computeIfAbsent(address, key -> new TokenBucket(
+                (double) ServerConfig.LOGIN_ADDRESS_FAILURES / ServerConfig.LOGIN_ADDRESS_WINDOW_SECONDS,
+                ServerConfig.LOGIN_ADDRESS_FAILURES)).reserve(Long.MAX_VALUE);
+    }
+
+    public static long getDelayed() {
+        return delayed.sum();
+    }
+
+    public static long getRejected() {
+        return rejected.sum();
+    }
+
+    public static long getLoginsThrottled() {
+        return loginsThrottled.sum();
+    }
+}
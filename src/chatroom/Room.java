@@ -0,0 +1,180 @@
+package chatroom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Room类 - 聊天房间
+ * 作用：保存房间名和房间成员，聊天消息只发送给同一房间的成员
+ * 知识点：
+ * 1. 并发集合 - 成员集合基于ConcurrentHashMap，加入/离开房间不会阻塞正在进行的广播
+ * 2. 定向发送 - 一条消息的成本只和房间人数有关，和服务器总在线人数无关
+ * 3. 最近消息 - 广播的消息同时记入MessageHistory，新成员进入时重放
+ * 4. 加入时的分界 - 新成员先加入成员集合，再取一个分界序号：序号小于它的消息由重放发送，
+ *    不小于它的由广播发送；重放时还没写好的消息不等待，记下序号改由广播发送，每条消息恰好收到一次。
+ *    重放完成前到达的广播先暂存，重放后再按序号顺序发送
+ */
+public class Room {
+
+    /**
+     * 房间成员
+     * 作用：记录加入时的分界序号；重放完成前由lock保护暂存的广播，重放完成后广播不再加锁
+     */
+    private static final class Member {
+        final ChatSession session;  // 会话
+        final ReentrantLock lock = new ReentrantLock();  // 只在重放完成前使用（不会钉住虚拟线程的载体线程）
+        volatile long boundary = Long.MAX_VALUE;  // 分界序号，确定前为最大值
+        volatile boolean replaying = true;  // 是否还在重放
+        long[] skipped;  // 分界之前、重放时跳过的消息序号，在replaying置为false之前写好
+        List<Pending> pending = new ArrayList<>();  // 重放完成前到达的广播，由lock保护
+
+        Member(ChatSession session) {
+            this.session = session;
+        }
+    }
+
+    /**
+     * 重放完成前暂存的广播
+     */
+    private static final class Pending {
+        final long sequence;  // 消息序号
+        final EncodedMessage message;  // 消息
+
+        Pending(long sequence, EncodedMessage message) {
+            this.sequence = sequence;
+            this.message = message;
+        }
+    }
+
+    private final String name;  // 房间名
+    private final ConcurrentHashMap<ChatSession, Member> members = new ConcurrentHashMap<>();  // 房间成员
+    private final MessageHistory history = new MessageHistory(ServerConfig.HISTORY_DEPTH);  // 最近消息
+
+    public Room(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 广播消息给房间成员
+     * @param message 已编码的消息
+     * @param sender 发送者（不发送给自己），系统消息传null
+     */
+    public void broadcast(EncodedMessage message, ChatSession sender) {
+        long start = System.nanoTime();
+        long sequence = history.record(message);
+        for (Member member : members.values()) {
+            ChatSession session = member.session;
+            if (session == sender || !session.isConnected()) {
+                continue;
+            }
+            if (member.replaying && hold(member, sequence, message)) {
+                continue;
+            }
+            if (sequence >= member.boundary || wasSkipped(member, sequence)) {
+                session.sendEncoded(message);
+            }
+        }
+        ServerMetrics.BROADCAST.recordSince(start);
+    }
+
+    /**
+     * 分界之前的消息是否在重放时被跳过（还没写入MessageHistory），需要由广播发送
+     */
+    private static boolean wasSkipped(Member member, long sequence) {
+        long[] skipped = member.skipped;
+        return skipped != null && skipped.length > 0 && Arrays.binarySearch(skipped, sequence) >= 0;
+    }
+
+    /**
+     * 成员还在重放时暂存广播
+     * @return 已暂存时返回true；重放刚好结束时返回false，由调用者直接发送
+     */
+    private static boolean hold(Member member, long sequence, EncodedMessage message) {
+        member.lock.lock();
+        try {
+            if (!member.replaying) {
+                return false;
+            }
+            member.pending.add(new Pending(sequence, message));
+            return true;
+        } finally {
+            member.lock.unlock();
+        }
+    }
+
+    /**
+     * 加入成员（由RoomManager在compute中调用，只做登记）
+     */
+    void add(ChatSession session) {
+        members.put(session, new Member(session));
+    }
+
+    /**
+     * 向新成员重放最近消息（由RoomManager在compute之外调用）
+     * 作用：在成员已加入之后取分界序号，重放分界之前的消息，再发送重放期间暂存的、
+     *      分界之后或重放时跳过的广播
+     * @param session 已经通过add加入的会话
+     */
+    void replayTo(ChatSession session) {
+        Member member = members.get(session);
+        if (member == null) {
+            return;  // 已经离开
+        }
+        long boundary = history.nextSequence();
+        member.lock.lock();
+        try {
+            member.boundary = boundary;
+            member.skipped = history.replay(session, boundary);
+            member.pending.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+            for (Pending held : member.pending) {
+                if (held.sequence >= boundary || wasSkipped(member, held.sequence)) {
+                    session.sendEncoded(held.message);
+                }
+            }
+            member.pending = null;
+            member.replaying = false;
+        } finally {
+            member.lock.unlock();
+        }
+    }
+
+    void remove(ChatSession session) {
+        members.remove(session);
+    }
+
+    boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    /**
+     * 获取最近消息
+     * @return 最近消息缓冲区
+     */
+    public MessageHistory getHistory() {
+        return history;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取房间成员
+     * @return 成员（弱一致性视图）
+     */
+    public Collection<ChatSession> getMembers() {
+        return members.keySet();
+    }
+
+    /**
+     * 获取房间人数
+     * @return 人数
+     */
+    public int size() {
+        return members.size();
+    }
+}
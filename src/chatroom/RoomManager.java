@@ -0,0 +1,89 @@
+package chatroom;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * RoomManager类 - 房间管理类
+ * 作用：维护 房间名 -> 房间 的索引，处理加入、离开房间；每个会话同一时间只在一个房间中，
+ *      登录后自动进入默认房间lobby
+ * 知识点：
+ * 1. ConcurrentHashMap.compute - 对单个房间的创建和删除是原子的，只锁住这一个键，
+ *    不影响其他房间，也不阻塞任何广播
+ * 2. 空房间回收 - 除默认房间外，最后一个成员离开时删除房间；默认房间在第一个用户登录时创建，
+ *    不在构造方法里创建，避免Server类加载时就读取ServerConfig（此时命令行参数还没有生效）
+ */
+public class RoomManager {
+    public static final String DEFAULT_ROOM = "lobby";  // 默认房间
+    private static final Pattern ROOM_NAME_PATTERN = Pattern.compile("^[\\p{L}\\p{N}_-]{1,20}$");  // 房间名规则
+
+    private final ConcurrentHashMap<String, Room> rooms = new ConcurrentHashMap<>();  // 房间名 -> 房间
+
+    /**
+     * 检查房间名格式（1-20位字母、数字、下划线或减号，允许中文）
+     * @param name 房间名
+     * @return 是否合法
+     */
+    public static boolean isValidRoomName(String name) {
+        return name != null && ROOM_NAME_PATTERN.matcher(name).matches();
+    }
+
+    /**
+     * 加入房间
+     * 作用：先离开当前房间，再加入新房间，房间不存在时自动创建；
+     *      compute中只登记成员，最近消息的重放在compute之外进行，不在持有ConcurrentHashMap桶锁时编码和入队；
+     *      加入之后取分界序号，分界之前的消息由重放发送，之后的由广播发送，不重复也不遗漏（见Room）
+     * @param session 会话
+     * @param name 房间名
+     * @return 加入的房间
+     */
+    public Room join(ChatSession session, String name) {
+        leave(session);
+        Room room = rooms.compute(name, (key, existing) -> {
+            Room target = existing != null ? existing : new Room(key);
+            target.add(session);
+            return target;
+        });
+        session.setRoom(name);
+        room.replayTo(session);
+        return room;
+    }
+
+    /**
+     * 离开当前房间
+     * 作用：从当前房间移除，除默认房间外空房间会被删除
+     * @param session 会话
+     */
+    public void leave(ChatSession session) {
+        String name = session.getRoom();
+        if (name == null) {
+            return;
+        }
+        session.setRoom(null);
+        rooms.computeIfPresent(name, (key, room) -> {
+            room.remove(session);
+            return room.isEmpty() && !DEFAULT_ROOM.equals(key) ? null : room;
+        });
+    }
+
+    /**
+     * 查找房间
+     * @param name 房间名
+     * @return 房间，不存在时返回null
+     */
+    public Room find(String name) {
+        return name == null ? null : rooms.get(name);
+    }
+
+    /**
+     * 获取房间列表
+     * @return 形如 "房间列表：lobby(3) dev(1) "
+     */
+    public String listRooms() {
+        StringBuilder list = new StringBuilder("房间列表：");
+        for (Room room : rooms.values()) {
+            list.append(room.getName()).append('(').append(room.size()).append(") ");
+        }
+        return list.toString();
+    }
+}
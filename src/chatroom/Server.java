@@ -0,0 +1,332 @@
+package chatroom;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.Collection;
+
+/**
+ * Server类 - TCP服务器端主类
+ * 作用：创建TCP服务器，处理多个客户端连接
+ * 知识点：
+ * 1. ServerSocket - 创建服务器套接字
+ * 2. 多线程 - 为每个客户端创建独立线程
+ * 3. 集合管理 - 用线程安全的SessionRegistry管理所有连接的客户端
+ * 4. 运行模式 - 默认每个客户端一个线程，也可以用 --mode=nio 切换为NioServer
+ * 5. 虚拟线程 - 线程模式下可用 --threads=virtual 把ClientHandler放到虚拟线程上运行
+ * 6. 房间 - 聊天消息只发给同一房间的成员（见RoomManager）
+ * 7. 消息日志 - 房间消息同时追加到MessageLog，客户端可以按偏移量重放错过的消息
+ * 8. 联邦 - 配置 --federation.peers 后和其他Server进程互相转发消息和在线状态（见Federation）
+ * 9. 在线状态 - 在线列表由PresenceTracker缓存，上线下线时推送给订阅的客户端
+ * 10. 运行指标 - 由ServerMetrics统计，可以用jconsole或管理员的STATS命令查看
+ */
+public class Server {
+    private static ServerSocket serverSocket;  // 服务器套接字
+    private static final SessionRegistry clients = new SessionRegistry();  // 存储所有客户端连接
+    private static final RoomManager rooms = new RoomManager();  // 房间
+    private static final PresenceTracker presence = new PresenceTracker();  // 在线状态（含其他节点的用户）
+    private static volatile MessageLog messageLog;  // 聊天消息日志，未开启时为null
+    private static volatile boolean isRunning = true;  // 服务器运行状态
+
+    public static void main(String[] args) {
+        applyArgs(args);
+        UserManager.init();
+        openMessageLog();
+        Federation.start();
+        ServerMetrics.register();
+        if (ServerConfig.isNioMode()) {
+            NioServer.startServer(ServerConfig.PORT);
+        } else {
+            startServer();
+        }
+    }
+
+    /**
+     * 解析命令行参数
+     * 作用：把 --xxx=yyy 形式的参数转换成系统属性 chat.xxx=yyy，由ServerConfig统一读取
+     * 注意：必须在第一次访问ServerConfig之前调用
+     * @param args 命令行参数
+     */
+    private static void applyArgs(String[] args) {
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (arg.startsWith("--") && eq > 2) {
+                System.setProperty("chat." + arg.substring(2, eq), arg.substring(eq + 1));
+            } else {
+                System.out.println("忽略无法识别的参数：" + arg);
+            }
+        }
+    }
+
+    /**
+     * 打开聊天消息日志
+     * 作用：打开失败时只打印错误，服务器照常运行，只是不再记录消息
+     */
+    private static void openMessageLog() {
+        if (ServerConfig.LOG_DIR.isEmpty()) {
+            return;
+        }
+        MessageLog log = new MessageLog(Paths.get(ServerConfig.LOG_DIR),
+                ServerConfig.LOG_SEGMENT_BYTES, ServerConfig.LOG_SEGMENTS);
+        try {
+            log.start();
+            messageLog = log;
+        } catch (IOException e) {
+            Log.warn("打开消息日志失败，不再记录聊天消息：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 启动服务器
+     * 作用：创建服务器套接字，开始监听客户端连接
+     * 知识点：
+     * 1. ServerSocket - 服务器套接字，用于监听指定端口
+     * 2. 异常处理 - try-catch处理网络异常
+     * 3. 无限循环 - 持续监听客户端连接
+     */
+    private static void startServer() {
+        try {
+            // 创建服务器套接字，监听指定端口
+            serverSocket = new ServerSocket(ServerConfig.PORT);
+            Log.info("服务器启动成功，监听端口：" + ServerConfig.PORT);
+            Log.info("等待客户端连接...（" + ServerConfig.THREADS + "线程）");
+
+            // 根据配置选择平台线程或虚拟线程
+            Thread.Builder threadBuilder = ServerConfig.threadBuilder().name("client-", 0);
+
+            // 无限循环，持续监听客户端连接
+            while (isRunning) {
+                try {
+                    // 等待客户端连接，这是一个阻塞方法
+                    Socket clientSocket = serverSocket.accept();
+                    Log.info("客户端连接成功：" + clientSocket.getInetAddress());
+
+                    // 为每个客户端创建独立线程
+                    ClientHandler clientHandler = new ClientHandler(clientSocket);
+                    clients.add(clientHandler);  // 将客户端添加到列表中
+                    ServerMetrics.connectionAccepted();
+                    threadBuilder.start(clientHandler);  // 启动客户端处理线程
+
+                } catch (IOException e) {
+                    // 如果服务器被关闭，会抛出异常
+                    if (isRunning) {
+                        Log.warn("接受客户端连接时出错：" + e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.error("服务器启动失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 停止服务器
+     * 作用：关闭服务器，释放资源
+     */
+    public static void stopServer() {
+        isRunning = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+            Log.info("服务器已关闭");
+        } catch (IOException e) {
+            Log.warn("关闭服务器时出错：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取在线用户列表
+     * 作用：返回当前在线的用户名列表（联邦模式下包括其他节点的用户）
+     * 知识点：在线列表有变化后第一次请求时才重新生成，其余请求直接返回缓存
+     * @return 已编码的在线用户名列表
+     */
+    public static EncodedMessage getOnlineUsers() {
+        return presence.snapshot();
+    }
+
+    /**
+     * 获取在线状态
+     * @return 在线状态
+     */
+    public static PresenceTracker getPresence() {
+        return presence;
+    }
+
+    /**
+     * 获取本节点的在线用户名
+     * @return 用户名（弱一致性视图）
+     */
+    public static Collection<String> localUsernames() {
+        return clients.onlineUsernames();
+    }
+
+    /**
+     * 广播消息给所有客户端
+     * 作用：将消息发送给所有连接的客户端
+     * 知识点：消息只编码一次，所有接收者共享同一份字节
+     * @param message 要广播的消息
+     * @param sender 发送者（不发送给自己）
+     */
+    public static void broadcastMessage(String message, ChatSession sender) {
+        EncodedMessage encoded = EncodedMessage.shared(message);
+        // 遍历所有客户端，发送消息
+        for (ChatSession client : clients.sessions()) {
+            if (client != sender && client.isConnected()) {
+                client.sendEncoded(encoded);
+            }
+        }
+    }
+
+    /**
+     * 广播消息给房间成员
+     * 作用：将消息发送给指定房间中的客户端，不经过其他房间的客户端
+     * @param roomName 房间名
+     * @param message 要广播的消息
+     * @param sender 发送者（不发送给自己）
+     */
+    public static void broadcastToRoom(String roomName, String message, ChatSession sender) {
+        deliverToRoom(roomName, message, sender);
+        Federation.relayRoom(roomName, message);
+    }
+
+    /**
+     * 在本节点投递房间消息
+     * 作用：记录消息日志并发给本节点的房间成员，不转发给其他节点；
+     *      其他节点转发来的消息也走这里
+     * @param roomName 房间名
+     * @param message 要广播的消息
+     * @param sender 发送者（不发送给自己），其他节点转发的消息传null
+     */
+    public static void deliverToRoom(String roomName, String message, ChatSession sender) {
+        MessageLog log = messageLog;
+        if (log != null) {
+            log.append(roomName, message);
+        }
+        Room room = rooms.find(roomName);
+        if (room != null) {
+            room.broadcast(EncodedMessage.shared(message), sender);
+        }
+    }
+
+    /**
+     * 获取聊天消息日志
+     * @return 消息日志，未开启时返回null
+     */
+    public static MessageLog getMessageLog() {
+        return messageLog;
+    }
+
+    /**
+     * 加入房间
+     * @param client 客户端
+     * @param roomName 房间名
+     * @return 加入的房间
+     */
+    public static Room joinRoom(ChatSession client, String roomName) {
+        return rooms.join(client, roomName);
+    }
+
+    /**
+     * 获取房间列表
+     * @return 房间列表信息
+     */
+    public static String listRooms() {
+        return rooms.listRooms();
+    }
+
+    /**
+     * 添加客户端
+     * 作用：NIO模式下接受新连接后，把会话加入列表
+     * @param client 新连接的客户端
+     */
+    public static void addClient(ChatSession client) {
+        clients.add(client);
+        ServerMetrics.connectionAccepted();
+    }
+
+    /**
+     * 获取当前连接数
+     * @return 连接数（含未登录的连接）
+     */
+    public static int getConnectedCount() {
+        return clients.connectedCount();
+    }
+
+    /**
+     * 获取所有发送队列中等待写出的消息总数
+     * 作用：只在查看统计时调用，需要遍历所有连接
+     * @return 消息数
+     */
+    public static int getOutboundQueueDepth() {
+        int depth = 0;
+        for (ChatSession client : clients.sessions()) {
+            depth += client.getOutboundQueueSize();
+        }
+        return depth;
+    }
+
+    /**
+     * 用户登录或注册成功
+     * 作用：设置会话的用户名，加入用户名索引，并进入默认房间；
+     *      同一连接换了用户名时，原来的用户名没有其他连接在线就通知下线。
+     *      是否是第一个或最后一个连接由SessionRegistry原子地判断，同名用户同时登录或断开时上下线通知各只发一次
+     * @param client 登录成功的客户端
+     * @param username 用户名
+     */
+    public static void bindUsername(ChatSession client, String username) {
+        String previous = client.getUsername();
+        if (username.equals(previous)) {
+            return;  // 同一连接重复登录同一用户
+        }
+        if (clients.unbindUsername(client)) {
+            userOffline(previous);
+        }
+        if (clients.bindUsername(client, username)) {
+            userOnline(username);
+        }
+        if (client.getRoom() == null) {
+            rooms.join(client, RoomManager.DEFAULT_ROOM);
+        }
+        if (!client.isConnected() && clients.unbindUsername(client)) {
+            // 登录完成前连接已经断开，removeClient可能在绑定之前就执行完了
+            userOffline(username);
+        }
+    }
+
+    private static void userOnline(String username) {
+        presence.online(username);
+        Federation.presence(username, true);
+    }
+
+    private static void userOffline(String username) {
+        presence.offline(username);
+        Federation.presence(username, false);
+    }
+
+    /**
+     * 根据用户名查找在线客户端
+     * @param username 用户名
+     * @return 该用户所有在线的客户端（同一用户可以从多个连接登录），不在线时为空集合
+     */
+    public static Collection<ChatSession> findClients(String username) {
+        return clients.find(username);
+    }
+
+    /**
+     * 移除客户端
+     * 作用：当客户端断开连接时，从列表中移除
+     * @param client 要移除的客户端
+     */
+    public static void removeClient(ChatSession client) {
+        rooms.leave(client);
+        boolean lastSession = clients.remove(client);
+        presence.unsubscribe(client);
+        Federation.sessionClosed(client);
+        if (lastSession) {
+            userOffline(client.getUsername());
+        }
+        Log.info("客户端已断开连接，当前在线人数：" + clients.connectedCount());
+    }
+}
@@ -0,0 +1,214 @@
+package chatroom;
+
+/**
+ * ServerConfig类 - 服务器配置类
+ * 作用：集中管理服务器的启动参数，参数来自JVM系统属性（-Dchat.xxx=yyy）
+ *      也可以通过命令行参数 --xxx=yyy 传入（见Server.main）
+ * 知识点：
+ * 1. 系统属性 - System.getProperty读取 -D 传入的参数
+ * 2. 静态常量 - 类加载时读取一次，之后不再变化
+ */
+public class ServerConfig {
+    /** 服务器端口号 */
+    public static final int PORT = Integer.getInteger("chat.port", 8888);
+
+    /** 服务器运行模式：thread（每个连接一个线程）或 nio（Selector事件循环） */
+    public static final String MODE = System.getProperty("chat.mode", "thread");
+
+    /** 线程模式下ClientHandler使用的线程类型：platform（平台线程）或 virtual（虚拟线程） */
+    public static final String THREADS = System.getProperty("chat.threads", "platform");
+
+    /** 每个客户端发送队列的容量（条） */
+    public static final int OUTBOUND_CAPACITY = Integer.getInteger("chat.outbound.capacity", 1024);
+
+    /** 发送队列满时的策略：drop_oldest、drop_newest、disconnect */
+    public static final String OUTBOUND_POLICY = System.getProperty("chat.outbound.policy", "drop_oldest");
+
+    /** 用户日志定期压缩到users.txt的间隔（秒） */
+    public static final int JOURNAL_COMPACT_SECONDS = Integer.getInteger("chat.journal.compactSeconds", 300);
+
+    /** 用户日志记录数达到多少条时提前压缩 */
+    public static final int JOURNAL_COMPACT_RECORDS = Integer.getInteger("chat.journal.compactRecords", 10000);
+
+    /** 用户快照格式：text（users.txt，启动时全部读入内存）或 binary（users.bin，内存映射按需查找） */
+    public static final String USER_SNAPSHOT = System.getProperty("chat.users.snapshot", "text");
+
+    /** 认证线程池的线程数 */
+    public static final int AUTH_THREADS = Integer.getInteger("chat.auth.threads",
+            Runtime.getRuntime().availableProcessors());
+
+    /** 认证线程池的排队上限，超过时直接拒绝 */
+    public static final int AUTH_QUEUE = Integer.getInteger("chat.auth.queue", 1024);
+
+    /** 密码哈希（PBKDF2）的迭代次数 */
+    public static final int AUTH_ITERATIONS = Integer.getInteger("chat.auth.iterations", 100000);
+
+    /** 每个房间保存的最近消息条数，登录或加入房间时重放，0表示不保存 */
+    public static final int HISTORY_DEPTH = Integer.getInteger("chat.history.depth", 50);
+
+    /** 聊天消息日志目录，为空时不记录 */
+    public static final String LOG_DIR = System.getProperty("chat.log.dir", "chatlog");
+
+    /** 单个消息日志分段文件的大小上限（字节） */
+    public static final long LOG_SEGMENT_BYTES = Long.getLong("chat.log.segmentBytes", 16L * 1024 * 1024);
+
+    /** 最多保留的消息日志分段数，0表示全部保留 */
+    public static final int LOG_SEGMENTS = Integer.getInteger("chat.log.segments", 64);
+
+    /** RESUME一次最多重放的消息条数 */
+    public static final int LOG_REPLAY_MAX = Integer.getInteger("chat.log.replayMax", 500);
+
+    /** 是否对客户端连接开启TCP_NODELAY（关闭Nagle算法），服务器自己合并写出，不依赖内核延迟合并 */
+    public static final boolean TCP_NODELAY = Boolean.parseBoolean(System.getProperty("chat.tcpNoDelay", "true"));
+
+    /** 每个连接的写缓冲区大小（字节），攒满时立即写出 */
+    public static final int WRITE_BUFFER_BYTES = Integer.getInteger("chat.write.bufferBytes", 16 * 1024);
+
+    /** 一次从发送队列取出合并写出的最多消息条数 */
+    public static final int WRITE_BATCH = Integer.getInteger("chat.write.batch", 64);
+
+    /** 本节点在联邦中的名字，各节点必须不同 */
+    public static final String NODE_ID = System.getProperty("chat.node.id", "node-" + PORT);
+
+    /** 联邦模式下要连接的其他节点，逗号分隔的 host:port（对方的聊天端口），为空时不开启联邦 */
+    public static final String FEDERATION_PEERS = System.getProperty("chat.federation.peers", "");
+
+    /** 联邦节点之间握手用的共享密钥，开启联邦时必须设置 */
+    public static final String FEDERATION_SECRET = System.getProperty("chat.federation.secret", "");
+
+    /** 管理员用户名，逗号分隔，只有管理员可以使用STATS命令 */
+    public static final String ADMINS = System.getProperty("chat.admins", "");
+
+    /** 日志级别：DEBUG、INFO、WARN、ERROR；DEBUG会记录每一条收到的消息 */
+    public static final String LOGGING_LEVEL = System.getProperty("chat.logging.level", "INFO");
+
+    /** 日志文件，为空时只输出到控制台 */
+    public static final String LOGGING_FILE = System.getProperty("chat.logging.file", "logs/server.log");
+
+    /** 单个日志文件的大小上限，超过后滚动 */
+    public static final long LOGGING_MAX_BYTES = Long.getLong("chat.logging.maxBytes", 10L * 1024 * 1024);
+
+    /** 滚动后保留的旧日志文件个数 */
+    public static final int LOGGING_FILES = Integer.getInteger("chat.logging.files", 5);
+
+    /** 日志缓冲区的容量（条），满了之后新日志被丢弃 */
+    public static final int LOGGING_BUFFER = Integer.getInteger("chat.logging.buffer", 8192);
+
+    /** 是否同时输出到控制台 */
+    public static final boolean LOGGING_CONSOLE = Boolean.parseBoolean(System.getProperty("chat.logging.console", "true"));
+
+    /** 连接空闲多少秒后发送PING，0表示不检查 */
+    public static final int HEARTBEAT_IDLE_SECONDS = Integer.getInteger("chat.heartbeat.idleSeconds", 30);
+
+    /** 发送PING后多少秒内没有收到任何数据就断开 */
+    public static final int HEARTBEAT_TIMEOUT_SECONDS = Integer.getInteger("chat.heartbeat.timeoutSeconds", 10);
+
+    /** 连接后多少秒内没有登录或注册成功就断开，0表示不限制 */
+    public static final int LOGIN_TIMEOUT_SECONDS = Integer.getInteger("chat.login.timeoutSeconds", 60);
+
+    /** 每个连接每秒最多发送的聊天消息和私聊数，0表示不限制 */
+    public static final double RATELIMIT_PER_SECOND = Double.parseDouble(System.getProperty("chat.ratelimit.perSecond", "10"));
+
+    /** 每个连接最多连续发送的消息数（令牌桶容量） */
+    public static final int RATELIMIT_BURST = Integer.getInteger("chat.ratelimit.burst", 20);
+
+    /** 全服务器每秒最多处理的聊天消息和私聊数，0表示不限制 */
+    public static final double RATELIMIT_GLOBAL_PER_SECOND = Double.parseDouble(System.getProperty("chat.ratelimit.globalPerSecond", "0"));
+
+    /** 全服务器最多连续处理的消息数 */
+    public static final int RATELIMIT_GLOBAL_BURST = Integer.getInteger("chat.ratelimit.globalBurst", 200);
+
+    /** 超速时的处理：reject（丢弃并提示）或 delay（延后处理，期间不读取该连接） */
+    public static final String RATELIMIT_MODE = System.getProperty("chat.ratelimit.mode", "reject");
+
+    /** delay模式下最多延迟的毫秒数，需要等待更久时仍然丢弃 */
+    public static final int RATELIMIT_MAX_DELAY_MILLIS = Integer.getInteger("chat.ratelimit.maxDelayMillis", 2000);
+
+    /** 同一连接最多登录失败的次数，之后必须重新连接，0表示不限制 */
+    public static final int LOGIN_MAX_FAILURES = Integer.getInteger("chat.login.maxFailures", 5);
+
+    /** 同一IP地址在login.addressWindowSeconds秒内最多登录失败的次数，0表示不限制 */
+    public static final int LOGIN_ADDRESS_FAILURES = Integer.getInteger("chat.login.addressFailures", 20);
+
+    /** IP地址登录失败次数的统计窗口（秒） */
+    public static final int LOGIN_ADDRESS_WINDOW_SECONDS = Integer.getInteger("chat.login.addressWindowSeconds", 60);
+
+    /** 是否允许客户端协商压缩 */
+    public static final boolean COMPRESSION_ENABLED = Boolean.parseBoolean(System.getProperty("chat.compression.enabled", "true"));
+
+    /** 多少字节以上的消息才压缩 */
+    public static final int COMPRESSION_THRESHOLD = Integer.getInteger("chat.compression.threshold", 512);
+
+    /** 压缩级别（1最快，9压缩率最高） */
+    public static final int COMPRESSION_LEVEL = Integer.getInteger("chat.compression.level", 6);
+
+    /** 心跳时间轮的刻度（毫秒） */
+    public static final int TIMER_TICK_MILLIS = Integer.getInteger("chat.timer.tickMillis", 100);
+
+    /**
+     * 是否使用NIO模式
+     * @return 配置为nio时返回true
+     */
+    public static boolean isNioMode() {
+        return "nio".equalsIgnoreCase(MODE);
+    }
+
+    /**
+     * 是否使用虚拟线程运行ClientHandler
+     * @return 配置为virtual时返回true
+     */
+    public static boolean isVirtualThreads() {
+        return "virtual".equalsIgnoreCase(THREADS);
+    }
+
+    /**
+     * 创建线程构造器
+     * 作用：根据配置返回平台线程或虚拟线程的构造器，ClientHandler的读写线程都用它创建
+     * @return 线程构造器
+     */
+    public static Thread.Builder threadBuilder() {
+        return isVirtualThreads() ? Thread.ofVirtual() : Thread.ofPlatform();
+    }
+
+    /**
+     * 获取发送队列满时的策略
+     * @return 慢消费者策略
+     */
+    public static OutboundQueue.Policy outboundPolicy() {
+        return OutboundQueue.Policy.valueOf(OUTBOUND_POLICY.toUpperCase());
+    }
+
+    /**
+     * 判断用户是否是管理员
+     * @param username 用户名
+     * @return 在管理员列表中时返回true
+     */
+    public static boolean isAdmin(String username) {
+        if (username == null) {
+            return false;
+        }
+        for (String admin : ADMINS.split(",")) {
+            if (admin.trim().equals(username)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 是否开启联邦模式
+     * 注意：没有设置共享密钥时任何客户端都能冒充节点，所以只配置了节点、没有密钥时不开启（启动时由Federation.start报错）
+     * @return 配置了其他节点和共享密钥时返回true
+     */
+    public static boolean isFederationEnabled() {
+        return !FEDERATION_PEERS.isBlank() && !FEDERATION_SECRET.isBlank();
+    }
+
+    /**
+     * 是否使用二进制用户快照
+     * @return 配置为binary时返回true
+     */
+    public static boolean isBinaryUserSnapshot() {
+        return "binary".equalsIgnoreCase(USER_SNAPSHOT);
+    }
+}
@@ -0,0 +1,221 @@
+package chatroom;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * ServerMetrics类 - 服务器运行指标
+ * 作用：统计连接数、登录注册次数、收发消息数和字节数，以及登录、广播、消息送达的延迟分布，
+ *      通过JMX（jconsole中的 chatroom:type=ServerMetrics）和管理员的STATS命令查看
+ * 知识点：
+ * 1. LongAdder - 计数在各线程各自的单元中累加，读取时才汇总，统计本身不会成为竞争点
+ * 2. 计数器和仪表 - 计数器只增不减（累计次数），仪表是读取时的当前值（在线人数、队列长度）
+ * 3. JMX - 实现ServerMetricsMBean接口后注册到平台MBeanServer，不需要额外依赖
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+    private static final LongAdder connectionsAccepted = new LongAdder();  // 累计接受的连接数
+    private static final LongAdder loginsSucceeded = new LongAdder();  // 登录成功次数
+    private static final LongAdder loginsFailed = new LongAdder();  // 登录失败次数
+    private static final LongAdder registrations = new LongAdder();  // 注册成功次数
+    private static final LongAdder messagesIn = new LongAdder();  // 收到的消息条数
+    private static final LongAdder bytesIn = new LongAdder();  // 收到的字节数
+
+    /** 登录耗时（含在认证线程池中排队的时间） */
+    public static final LatencyHistogram LOGIN = new LatencyHistogram("login");
+    /** 一条房间消息发给所有成员（放入发送队列）的耗时 */
+    public static final LatencyHistogram BROADCAST = new LatencyHistogram("broadcast");
+    /** 消息从编码到写入socket的耗时 */
+    public static final LatencyHistogram DELIVERY = new LatencyHistogram("delivery");
+
+    /**
+     * 注册JMX MBean
+     */
+    public static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new ServerMetrics(),
+                    new ObjectName("chatroom:type=ServerMetrics"));
+        } catch (JMException e) {
+            Log.warn("注册JMX指标失败：" + e.getMessage());
+        }
+    }
+
+    public static void connectionAccepted() {
+        connectionsAccepted.increment();
+    }
+
+    public static void loginResult(boolean success) {
+        (success ? loginsSucceeded : loginsFailed).increment();
+    }
+
+    public static void registered() {
+        registrations.increment();
+    }
+
+    public static void messageIn() {
+        messagesIn.increment();
+    }
+
+    /**
+     * 从socket读到数据
+     * @param bytes 字节数
+     */
+    public static void bytesRead(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    /**
+     * 生成一行统计报告
+     * @return 报告
+     */
+    public static String report() {
+        ServerMetrics m = new ServerMetrics();
+        return String.format("统计：连接=%d/%d 在线=%d 登录=%d/%d 注册=%d 收=%d条/%dB 发=%d条/%dB "
+                        + "每次写=%.1f条 队列=%d 丢弃=%d 日志丢弃=%d 超时断开=%d/%d "
+                        + "限流=延迟%d/拒绝%d 登录限制=%d 注册冲突=%d 压缩=%d条/未压缩%d条/压缩率%.2f %s %s %s",
+                m.getActiveConnections(), m.getConnectionsAccepted(), m.getOnlineUsers(),
+                m.getLoginsSucceeded(), m.getLoginsFailed(), m.getRegistrations(),
+                m.getMessagesIn(), m.getBytesIn(), m.getMessagesOut(), m.getBytesOut(),
+                m.getMessagesPerWrite(), m.getOutboundQueueDepth(), m.getOutboundDropped(), m.getLogDropped(),
+                m.getIdleEvictions(), m.getLoginTimeouts(),
+                m.getRateLimitDelayed(), m.getRateLimitRejected(), m.getLoginsThrottled(), m.getUserConflicts(),
+                m.getCompressedMessages(), m.getCompressionSkipped(), m.getCompressionRatio(),
+                LOGIN.summary(), BROADCAST.summary(), DELIVERY.summary());
+    }
+
+    @Override
+    public long getConnectionsAccepted() {
+        return connectionsAccepted.sum();
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return Server.getConnectedCount();
+    }
+
+    @Override
+    public int getOnlineUsers() {
+        return Server.getPresence().size();
+    }
+
+    @Override
+    public long getLoginsSucceeded() {
+        return loginsSucceeded.sum();
+    }
+
+    @Override
+    public long getLoginsFailed() {
+        return loginsFailed.sum();
+    }
+
+    @Override
+    public long getRegistrations() {
+        return registrations.sum();
+    }
+
+    @Override
+    public long getMessagesIn() {
+        return messagesIn.sum();
+    }
+
+    @Override
+    public long getMessagesOut() {
+        return WriteStats.getMessages();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return WriteStats.getBytes();
+    }
+
+    @Override
+    public double getMessagesPerWrite() {
+        return WriteStats.getMessagesPerWrite();
+    }
+
+    @Override
+    public int getOutboundQueueDepth() {
+        return Server.getOutboundQueueDepth();
+    }
+
+    @Override
+    public long getOutboundDropped() {
+        return OutboundQueue.getTotalDropped();
+    }
+
+    @Override
+    public long getLogDropped() {
+        return Log.getDropped();
+    }
+
+    @Override
+    public long getIdleEvictions() {
+        return Heartbeat.getIdleEvictions();
+    }
+
+    @Override
+    public long getLoginTimeouts() {
+        return Heartbeat.getLoginTimeouts();
+    }
+
+    @Override
+    public long getRateLimitDelayed() {
+        return RateLimiter.getDelayed();
+    }
+
+    @Override
+    public long getRateLimitRejected() {
+        return RateLimiter.getRejected();
+    }
+
+    @Override
+    public long getLoginsThrottled() {
+        return RateLimiter.getLoginsThrottled();
+    }
+
+    @Override
+    public long getUserConflicts() {
+        return Federation.getUserConflicts();
+    }
+
+    @Override
+    public long getCompressedMessages() {
+        return Compression.getCompressed();
+    }
+
+    @Override
+    public long getCompressionSkipped() {
+        return Compression.getSkipped();
+    }
+
+    @Override
+    public double getCompressionRatio() {
+        return Compression.getRatio();
+    }
+
+    @Override
+    public double getLoginP99Millis() {
+        return LOGIN.getPercentileMicros(0.99) / 1000;
+    }
+
+    @Override
+    public double getBroadcastP99Millis() {
+        return BROADCAST.getPercentileMicros(0.99) / 1000;
+    }
+
+    @Override
+    public double getDeliveryP99Millis() {
+        return DELIVERY.getPercentileMicros(0.99) / 1000;
+    }
+
+    @Override
+    public String getReport() {
+        return report();
+    }
+}
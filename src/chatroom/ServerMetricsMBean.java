@@ -0,0 +1,61 @@
+package chatroom;
+
+/**
+ * ServerMetricsMBean接口 - 服务器指标的JMX接口
+ * 作用：按JMX标准MBean的命名规则（类名 + MBean），这里的getter会显示为jconsole中的属性
+ */
+public interface ServerMetricsMBean {
+    long getConnectionsAccepted();
+
+    int getActiveConnections();
+
+    int getOnlineUsers();
+
+    long getLoginsSucceeded();
+
+    long getLoginsFailed();
+
+    long getRegistrations();
+
+    long getMessagesIn();
+
+    long getMessagesOut();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    double getMessagesPerWrite();
+
+    int getOutboundQueueDepth();
+
+    long getOutboundDropped();
+
+    long getLogDropped();
+
+    long getIdleEvictions();
+
+    long getLoginTimeouts();
+
+    long getRateLimitDelayed();
+
+    long getRateLimitRejected();
+
+    long getLoginsThrottled();
+
+    long getUserConflicts();
+
+    long getCompressedMessages();
+
+    long getCompressionSkipped();
+
+    double getCompressionRatio();
+
+    double getLoginP99Millis();
+
+    double getBroadcastP99Millis();
+
+    double getDeliveryP99Millis();
+
+    String getReport();
+}
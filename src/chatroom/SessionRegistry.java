@@ -0,0 +1,129 @@
+package chatroom;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SessionRegistry类 - 在线会话注册表
+ * 作用：线程安全地保存所有连接的会话，并按用户名建立索引
+ * 知识点：
+ * 1. ConcurrentHashMap - 分段加锁/CAS实现的并发哈希表，读操作不加锁
+ * 2. 弱一致性迭代 - 遍历时不会抛出ConcurrentModificationException，
+ *    也不会阻塞同时进行的添加和删除
+ * 3. 按用户名索引 - 根据用户名查找会话是O(1)操作；同一个用户可以同时从多个连接登录，
+ *    索引中保存该用户的全部会话，其中一个断开时其他会话仍然可以找到
+ * 4. 原子的首次/最后判断 - 加入和移除都在compute中完成，返回值说明这是不是该用户的第一个或最后一个会话，
+ *    多个连接同时登录或断开时也只有一个调用者得到true
+ */
+public class SessionRegistry {
+    private final Set<ChatSession> sessions = ConcurrentHashMap.newKeySet();  // 所有连接（包括未登录的）
+    private final ConcurrentHashMap<String, Set<ChatSession>> byUsername = new ConcurrentHashMap<>();  // 用户名 -> 该用户的所有会话
+
+    /**
+     * 添加会话
+     * @param session 新连接的会话
+     */
+    public void add(ChatSession session) {
+        sessions.add(session);
+    }
+
+    /**
+     * 移除会话
+     * 作用：断开连接时调用，同时从用户名索引中移除这个会话
+     * @param session 要移除的会话
+     * @return 这是该用户最后一个在线的会话时返回true
+     */
+    public boolean remove(ChatSession session) {
+        sessions.remove(session);
+        return unbindUsername(session);
+    }
+
+    /**
+     * 绑定用户名
+     * 作用：登录或注册成功后，设置会话的用户名并加入用户名索引；会话原来绑定的用户名先解除
+     * @param session 会话
+     * @param username 用户名
+     * @return 这是该用户第一个在线的会话时返回true
+     */
+    public boolean bindUsername(ChatSession session, String username) {
+        unbindUsername(session);
+        session.setUsername(username);
+        boolean[] first = {false};
+        byUsername.compute(username, (key, owned) -> {
+            if (owned == null) {
+                owned = ConcurrentHashMap.newKeySet();
+            }
+            first[0] = owned.isEmpty();
+            owned.add(session);
+            return owned;
+        });
+        return first[0];
+    }
+
+    /**
+     * 解除会话的用户名索引
+     * 作用：只移除这个会话本身，同一用户的其他会话不受影响；同一个会话重复解除时什么也不做
+     * @param session 会话
+     * @return 这是该用户最后一个在线的会话时返回true
+     */
+    public boolean unbindUsername(ChatSession session) {
+        String username = session.getUsername();
+        if (username == null) {
+            return false;
+        }
+        boolean[] last = {false};
+        byUsername.computeIfPresent(username, (key, owned) -> {
+            if (!owned.remove(session)) {
+                return owned;
+            }
+            last[0] = owned.isEmpty();
+            return last[0] ? null : owned;
+        });
+        return last[0];
+    }
+
+    /**
+     * 根据用户名查找会话
+     * @param username 用户名
+     * @return 该用户所有在线的会话（弱一致性视图），不在线时为空集合
+     */
+    public Collection<ChatSession> find(String username) {
+        Set<ChatSession> owned = byUsername.get(username);
+        return owned == null ? Collections.emptySet() : owned;
+    }
+
+    /**
+     * 获取所有连接的会话
+     * 作用：用于广播，返回的集合可以在其他线程增删的同时安全遍历
+     * @return 所有会话（弱一致性视图）
+     */
+    public Collection<ChatSession> sessions() {
+        return sessions;
+    }
+
+    /**
+     * 获取所有在线用户名
+     * @return 已登录用户名（弱一致性视图）
+     */
+    public Collection<String> onlineUsernames() {
+        return byUsername.keySet();
+    }
+
+    /**
+     * 获取连接数
+     * @return 当前连接数（包括未登录的连接）
+     */
+    public int connectedCount() {
+        return sessions.size();
+    }
+
+    /**
+     * 获取在线用户数
+     * @return 已登录用户数
+     */
+    public int onlineCount() {
+        return byUsername.size();
+    }
+}
@@ -0,0 +1,198 @@
+package chatroom;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TimerWheel类 - 哈希时间轮
+ * 作用：管理大量延迟任务（每个连接的空闲检查、登录期限），添加和取消都是O(1)，
+ *      由一个后台线程每隔一个刻度处理当前槽位中到期的任务
+ * 知识点：
+ * 1. 时间轮 - 槽位数组按刻度循环，任务按到期刻度放入对应槽位；
+ *    超过一圈的任务记录剩余圈数，每转过一次减一，减到0时才执行
+ * 2. 单线程拥有槽位 - 其他线程添加和取消任务只放入无锁队列，由时间轮线程移入或移出槽位，
+ *    槽位中的双向链表不需要加锁
+ * 3. 精度 - 任务最多比期望时间晚一个刻度执行，适合超时检测这类不要求精确的场景
+ * 4. 任务在时间轮线程中执行，必须很快完成（例如只发送一条消息或关闭socket）
+ */
+public class TimerWheel {
+    private static final int PENDING = 0;  // 等待执行
+    private static final int CANCELLED = 1;  // 已取消
+    private static final int EXPIRED = 2;  // 已执行
+
+    /**
+     * 一个延迟任务
+     */
+    public final class Timeout {
+        private final Runnable task;  // 到期后执行的任务
+        private final long deadline;  // 到期时间（相对于时间轮启动的纳秒数）
+        private final AtomicInteger state = new AtomicInteger(PENDING);  // 状态
+        private long rounds;  // 剩余圈数，只在时间轮线程中使用
+        private Timeout prev;  // 槽位链表中的前一个，只在时间轮线程中使用
+        private Timeout next;  // 槽位链表中的后一个，只在时间轮线程中使用
+        private Bucket bucket;  // 所在槽位，只在时间轮线程中使用
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 取消任务
+         * @return 取消前还没有执行时返回true
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+    }
+
+    /**
+     * 一个槽位：到期刻度落在这里的任务组成的双向链表
+     */
+    private static final class Bucket {
+        private Timeout head;  // 链表头
+        private Timeout tail;  // 链表尾
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+
+    private final long tickNanos;  // 一个刻度的纳秒数
+    private final Bucket[] wheel;  // 槽位（个数为2的幂）
+    private final int mask;  // 槽位下标掩码
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();  // 新添加、还没放入槽位的任务
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();  // 已取消、还没移出槽位的任务
+    private final long startTime = System.nanoTime();  // 启动时间
+    private long tick;  // 下一个要处理的刻度，只在时间轮线程中使用
+
+    /**
+     * 创建并启动时间轮
+     * @param name 线程名
+     * @param tickMillis 刻度（毫秒）
+     * @param slots 槽位数，会向上取整为2的幂
+     */
+    public TimerWheel(String name, long tickMillis, int slots) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(tickMillis, 1));
+        int size = Integer.highestOneBit(Math.max(slots, 2) * 2 - 1);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        Thread.ofPlatform().daemon().name(name).start(this::run);
+    }
+
+    /**
+     * 添加延迟任务
+     * @param task 任务
+     * @param delay 延迟
+     * @param unit 延迟的单位
+     * @return 可以取消的任务句柄
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() - startTime + unit.toNanos(Math.max(delay, 0)));
+        added.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * 时间轮线程
+     * 作用：等到下一个刻度，移出已取消的任务，放入新任务，然后执行当前槽位中到期的任务
+     */
+    private void run() {
+        while (true) {
+            long deadline = tickNanos * (tick + 1);
+            long sleep = deadline - (System.nanoTime() - startTime);
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+                continue;
+            }
+            removeCancelled();
+            transferAdded();
+            expire(wheel[(int) (tick & mask)], deadline);
+            tick++;
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferAdded() {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.state.get() != PENDING) {
+                continue;
+            }
+            long expireTick = timeout.deadline / tickNanos;
+            timeout.rounds = (expireTick - tick) / wheel.length;
+            // 已经过期的任务放到当前刻度，马上执行
+            wheel[(int) (Math.max(expireTick, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void expire(Bucket bucket, long deadline) {
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.rounds <= 0 && timeout.deadline <= deadline) {
+                bucket.remove(timeout);
+                if (timeout.state.compareAndSet(PENDING, EXPIRED)) {
+                    try {
+                        timeout.task.run();
+                    } catch (RuntimeException e) {
+                        Log.warn("定时任务执行出错：" + e);
+                    }
+                }
+            } else if (timeout.isCancelled()) {
+                bucket.remove(timeout);
+            } else {
+                timeout.rounds--;
+            }
+            timeout = next;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package chatroom;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TokenBucket类 - 无锁令牌桶
+ * 作用：限制某件事的平均速率（每秒rate次），同时允许最多burst次的突发
+ * 知识点：
+ * 1. GCRA（通用信元速率算法）- 令牌桶的等价写法，不需要单独保存令牌数和上次补充时间，
+ *    只保存一个"理论到达时间"：每次通过都把它往后推一个间隔，它超前当前时间太多时说明桶空了
+ * 2. CAS - 理论到达时间保存在AtomicLong中，多个线程同时取令牌时用compareAndSet重试，不加锁
+ * 3. 拒绝和等待 - tryAcquire在桶空时不取令牌，返回还要等多久；
+ *    reserve直接预订下一个令牌并返回需要等待的时间，调用者等待后再执行
+ * 4. 退还 - refund把理论到达时间往前拨回一个间隔，取到的令牌最终没有用上时调用
+ */
+public class TokenBucket {
+    private final long interval;  // 每个令牌的间隔（纳秒）
+    private final long tolerance;  // 允许超前的时间（纳秒），对应突发数
+    private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());  // 理论到达时间
+
+    /**
+     * @param ratePerSecond 每秒补充的令牌数
+     * @param burst 桶的容量（最多连续通过的次数）
+     */
+    public TokenBucket(double ratePerSecond, int burst) {
+        this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+        this.tolerance = interval * Math.max(burst - 1, 0);
+    }
+
+    /**
+     * 尝试取一个令牌
+     * @return 0表示已取到；大于0表示桶空了，还要等待的纳秒数（没有取令牌）
+     */
+    public long tryAcquire() {
+        while (true) {
+            long now = System.nanoTime();
+            long tat = theoreticalArrival.get();
+            long start = tat - now > 0 ? tat : now;
+            long wait = start - tolerance - now;
+            if (wait > 0) {
+                return wait;
+            }
+            if (theoreticalArrival.compareAndSet(tat, start + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 预订一个令牌
+     * @param maxWaitNanos 最多愿意等待的纳秒数
+     * @return 需要等待的纳秒数（0表示马上可以执行）；等待时间超过maxWaitNanos时返回-1，不预订
+     */
+    public long reserve(long maxWaitNanos) {
+        while (true) {
+            long now = System.nanoTime();
+            long tat = theoreticalArrival.get();
+            long start = tat - now > 0 ? tat : now;
+            long wait = Math.max(start - tolerance - now, 0);
+            if (wait > maxWaitNanos) {
+                return -1;
+            }
+            if (theoreticalArrival.compareAndSet(tat, start + interval)) {
+                return wait;
+            }
+        }
+    }
+
+    /**
+     * 退还一个已经取到或预订的令牌
+     * 作用：和其他线程的取令牌互不干扰（加减可以交换顺序）；拨回到当前时间之前时等同于桶满
+     */
+    public void refund() {
+        theoreticalArrival.addAndGet(-interval);
+    }
+
+    /**
+     * 距离下一个令牌可用还有多久（不取令牌）
+     * @return 纳秒数，0表示现在就有令牌
+     */
+    public long timeUntilAvailable() {
+        long now = System.nanoTime();
+        return Math.max(theoreticalArrival.get() - tolerance - now, 0);
+    }
+
+    /**
+     * 桶是否已满（很久没有使用）
+     * @return 已满时返回true，这时丢弃这个桶和保留它效果相同
+     */
+    public boolean isIdle() {
+        return theoreticalArrival.get() - System.nanoTime() <= 0;
+    }
+}
@@ -1,3 +1,5 @@
+package chatroom;
+
 /**
  * User类 - 用户信息实体类
  * 作用：封装用户的基本信息，包括用户名和密码
@@ -9,7 +11,7 @@
  */
 public class User {
     private String username;
-    private String password;
+    private String password;  // 密码凭证（PasswordHasher计算的哈希，旧数据可能是明文）
 
     /**
      * 无参构造方法
@@ -0,0 +1,294 @@
+package chatroom;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * UserJournal类 - 用户数据追加日志
+ * 作用：新注册（或修改）的用户不再重写整个users.txt，而是追加一条记录到日志文件；
+ *      后台线程把一段时间内的多条记录合并成一次写入和一次fsync（组提交），
+ *      并定期把内存中的全部用户压缩成新的快照文件，然后清空日志
+ * 知识点：
+ * 1. 追加写 - 写入成本只和新记录有关，和用户总数无关
+ * 2. 组提交 - 多个注册请求共用一次FileChannel.force，减少磁盘同步次数
+ * 3. CRC32校验 - 回放时发现写了一半的记录（进程崩溃）就截断丢弃
+ * 4. 原子替换 - 快照先写临时文件再rename，任何时刻磁盘上都有一个完整的快照
+ */
+public class UserJournal {
+
+    /**
+     * 快照写入器
+     * 作用：压缩时由UserManager提供，把当前所有用户写入指定文件
+     */
+    public interface SnapshotWriter {
+        void writeSnapshot(Path target) throws IOException;
+
+        /**
+         * 新快照已原子替换旧快照后调用（仍在写线程中）
+         * @param snapshotFile 新快照文件
+         * @throws IOException 处理失败
+         */
+        default void snapshotInstalled(Path snapshotFile) throws IOException {
+        }
+    }
+
+    /**
+     * 一条待写入的记录
+     */
+    private static final class Record {
+        final byte[] bytes;  // 编码后的一行
+        final CompletableFuture<Void> done = new CompletableFuture<>();  // fsync完成后完成
+
+        Record(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private static final int MAX_BATCH = 256;  // 一次组提交最多合并多少条记录
+
+    private final Path journalFile;  // 日志文件
+    private final Path snapshotFile;  // 快照文件
+    private final SnapshotWriter snapshotWriter;  // 压缩时写快照
+    private final long compactIntervalMillis;  // 定期压缩的间隔
+    private final int compactRecords;  // 日志记录数达到多少时提前压缩
+    private final LinkedBlockingQueue<Record> queue = new LinkedBlockingQueue<>();  // 待写入的记录
+    private FileChannel channel;  // 日志文件通道，只在写线程中使用
+    private volatile boolean running;  // 写线程是否在运行，未运行时追加的记录直接失败
+    private int recordCount;  // 日志中现有记录数，只在写线程中使用
+    private long lastCompactTime = System.currentTimeMillis();  // 上次压缩时间
+
+    public UserJournal(Path journalFile, Path snapshotFile, SnapshotWriter snapshotWriter,
+                       long compactIntervalMillis, int compactRecords) {
+        this.journalFile = journalFile;
+        this.snapshotFile = snapshotFile;
+        this.snapshotWriter = snapshotWriter;
+        this.compactIntervalMillis = compactIntervalMillis;
+        this.compactRecords = compactRecords;
+    }
+
+    /**
+     * 回放日志
+     * 作用：启动时在读取快照之后调用，按顺序把日志中的每条有效记录交给consumer；
+     *      遇到校验失败或不完整的记录（上次崩溃时写了一半）就把文件截断到最后一条有效记录
+     * @param consumer 接收用户名和凭证
+     * @return 回放的记录数
+     * @throws IOException 读取失败
+     */
+    public int replay(BiConsumer<String, String> consumer) throws IOException {
+        if (!Files.exists(journalFile)) {
+            return 0;
+        }
+        int count = 0;
+        long validLength = 0;
+        try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // 记录格式：username,credential,crc32（十六进制）
+                int first = line.indexOf(',');
+                int last = line.lastIndexOf(',');
+                if (first <= 0 || last <= first) {
+                    break;
+                }
+                String body = line.substring(0, last);
+                if (!Long.toHexString(crc(body)).equals(line.substring(last + 1))) {
+                    break;
+                }
+                consumer.accept(line.substring(0, first), line.substring(first + 1, last));
+                validLength += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                count++;
+            }
+        }
+        long size = Files.size(journalFile);
+        if (validLength != size) {
+            try (FileChannel ch = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+                if (validLength < size) {
+                    Log.warn("用户日志末尾有不完整的记录，已截断");
+                    ch.truncate(validLength);
+                } else {
+                    // 最后一条记录完整但缺少换行符，补上，避免下一条记录接在同一行
+                    ch.write(ByteBuffer.wrap(new byte[]{'\n'}), size);
+                }
+                ch.force(true);
+            }
+        }
+        recordCount = count;
+        return count;
+    }
+
+    /**
+     * 启动后台写线程
+     * @throws IOException 打开日志文件失败
+     */
+    public void start() throws IOException {
+        channel = FileChannel.open(journalFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        Thread writer = new Thread(this::writeLoop, "user-journal");
+        writer.setDaemon(true);
+        running = true;
+        writer.start();
+    }
+
+    /**
+     * 追加一条用户记录
+     * @param username 用户名
+     * @param credential 凭证（密码）
+     * @return 记录写入磁盘并fsync后完成的Future；写线程没有运行时返回已失败的Future，调用者不会永远等待
+     */
+    public CompletableFuture<Void> append(String username, String credential) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new IOException("用户日志没有打开"));
+        }
+        String body = username + "," + credential;
+        Record record = new Record((body + "," + Long.toHexString(crc(body)) + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        queue.add(record);
+        if (!running) {
+            // 写线程在入队的同时停止了，由这里保证记录不会留在队列中无人处理
+            failPending(new IOException("用户日志已停止"));
+        }
+        return record.done;
+    }
+
+    /**
+     * 写线程循环
+     * 作用：取出一批记录一起写入并fsync，空闲时检查是否需要压缩
+     */
+    private void writeLoop() {
+        List<Record> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            try {
+                Record first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    // 等待期间到达的记录一起提交
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    commit(batch);
+                    batch.clear();
+                }
+                if (!running) {
+                    failPending(new IOException("用户日志已停止"));
+                    return;
+                }
+                if (recordCount >= compactRecords
+                        || (recordCount > 0 && System.currentTimeMillis() - lastCompactTime >= compactIntervalMillis)) {
+                    compact();
+                }
+            } catch (InterruptedException e) {
+                running = false;
+                failPending(new IOException("用户日志已停止"));
+                return;
+            }
+        }
+    }
+
+    /**
+     * 让队列中所有还没写入的记录失败
+     * @param cause 失败原因
+     */
+    private void failPending(IOException cause) {
+        Record record;
+        while ((record = queue.poll()) != null) {
+            record.done.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * 组提交：一次写入整批记录，一次fsync
+     * 作用：写入失败时把文件截断回这一批开始的位置，不留下写了一半的记录；
+     *      否则之后确认过的记录都接在坏记录后面，重启回放到坏记录就截断，会把它们一起丢掉。
+     *      连截断也失败时停止写线程，之后的注册都直接失败，不再确认任何记录
+     */
+    private void commit(List<Record> batch) {
+        long start = -1;
+        try {
+            start = channel.size();
+            ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = ByteBuffer.wrap(batch.get(i).bytes);
+            }
+            long remaining = 0;
+            for (ByteBuffer buffer : buffers) {
+                remaining += buffer.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+            channel.force(false);
+            recordCount += batch.size();
+            for (Record record : batch) {
+                record.done.complete(null);
+            }
+        } catch (IOException e) {
+            Log.warn("写入用户日志失败：" + e.getMessage());
+            rollback(start);
+            for (Record record : batch) {
+                record.done.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * 把日志截断回一批记录开始的位置
+     * @param start 这一批开始时的文件长度，没有取到时为-1
+     */
+    private void rollback(long start) {
+        try {
+            if (start < 0) {
+                throw new IOException("无法确定日志长度");
+            }
+            channel.truncate(start);
+            channel.force(true);
+        } catch (IOException e) {
+            Log.error("无法回滚用户日志，停止写入：" + e.getMessage());
+            running = false;
+        }
+    }
+
+    /**
+     * 压缩
+     * 作用：把内存中的全部用户写成新快照（先写临时文件，fsync后原子替换），然后清空日志。
+     *      在写线程中执行，和追加记录不会交错；如果在替换快照后、清空日志前崩溃，
+     *      重启时会把日志再回放一遍，结果相同
+     */
+    private void compact() {
+        Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try {
+            snapshotWriter.writeSnapshot(temp);
+            try (FileChannel ch = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ch.force(true);
+            }
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            snapshotWriter.snapshotInstalled(snapshotFile);
+            channel.truncate(0);
+            channel.force(true);
+            Log.info("用户日志已压缩，" + recordCount + " 条记录合并到快照");
+            recordCount = 0;
+        } catch (IOException e) {
+            Log.warn("压缩用户日志失败：" + e.getMessage());
+        }
+        lastCompactTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 计算一条记录的CRC32校验值
+     */
+    private static long crc(String body) {
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+}
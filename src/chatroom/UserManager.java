@@ -0,0 +1,403 @@
+package chatroom;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * UserManager类 - 用户管理类
+ * 作用：管理所有用户数据，包括注册、登录验证、数据存储等功能
+ * 知识点：
+ * 1. 集合框架 - 使用ConcurrentHashMap按用户名索引用户，查找是O(1)，多个ClientHandler线程可以同时访问
+ * 2. 文件I/O - users.txt是快照，新用户追加到users.journal（见UserJournal），定期压缩回快照；
+ *    也可以配置为内存映射的二进制快照users.bin（见UserSnapshot），此时users中只保存日志里的新用户
+ * 3. 异常处理 - 处理文件操作可能出现的异常
+ * 4. 正则表达式 - 验证用户名和密码格式，Pattern预先编译好重复使用
+ * 5. 静态方法 - 提供工具方法
+ * 6. 密码哈希 - 只保存PasswordHasher计算的加盐哈希，旧的明文密码在用户下次登录成功时自动升级
+ *    注册和登录计算哈希较慢，由AuthService线程池调用
+ * 7. 联邦同步 - 新注册和升级的用户记录会同步给其他节点（见Federation），各节点之间是最终一致的，
+ *    两个节点同时注册同一个用户名时不会自动合并，见applyReplicated
+ */
+public class UserManager {
+    private static final String USER_FILE = "users.txt"; // 用户数据快照文件名
+    private static final String BINARY_USER_FILE = "users.bin"; // 二进制用户快照文件名
+    private static final String JOURNAL_FILE = "users.journal"; // 用户数据追加日志文件名
+    private static final boolean binarySnapshot = ServerConfig.isBinaryUserSnapshot(); // 是否使用二进制快照
+    private static final ConcurrentHashMap<String, User> users = new ConcurrentHashMap<>(); // 用户名 -> 用户
+    private static volatile UserSnapshot snapshot; // 二进制快照，文本模式下为null
+    private static List<User> compactedUsers = new ArrayList<>(); // 最近一次压缩写入二进制快照的新用户，只在日志写线程使用
+    private static final UserJournal journal = new UserJournal(Paths.get(JOURNAL_FILE),
+            Paths.get(binarySnapshot ? BINARY_USER_FILE : USER_FILE), new UserJournal.SnapshotWriter() {
+                @Override
+                public void writeSnapshot(Path target) throws IOException {
+                    UserManager.writeSnapshot(target);
+                }
+
+                @Override
+                public void snapshotInstalled(Path snapshotFile) throws IOException {
+                    UserManager.snapshotInstalled(snapshotFile);
+                }
+            }, ServerConfig.JOURNAL_COMPACT_SECONDS * 1000L, ServerConfig.JOURNAL_COMPACT_RECORDS); // 追加日志
+
+    // 正则表达式：^[a-zA-Z]{6,18}$
+    // ^ 表示字符串开始，[a-zA-Z] 表示只能是大小写字母，{6,18} 表示长度6到18位，$ 表示字符串结束
+    private static final Pattern USERNAME_PATTERN = Pattern.compile("^[a-zA-Z]{6,18}$");
+    // 正则表达式：^[a-zA-Z][0-9]{2,7}$
+    // ^[a-zA-Z] 表示第一位必须是字母，[0-9]{2,7} 表示后面2-7位必须是数字
+    private static final Pattern PASSWORD_PATTERN = Pattern.compile("^[a-zA-Z][0-9]{2,7}$");
+
+    /**
+     * 静态代码块
+     * 作用：在类加载时自动执行，读取本地用户数据
+     * 知识点：静态代码块在类第一次被加载时执行，且只执行一次
+     */
+    static {
+        loadUsersFromFile();
+    }
+
+    /**
+     * 从文件加载用户数据
+     * 作用：程序启动时读取快照文件中的所有用户信息，再回放追加日志中的新用户
+     * 知识点：
+     * 1. 文件读取 - 使用BufferedReader读取文件
+     * 2. 异常处理 - try-catch处理IO异常
+     * 3. 字符串分割 - split方法分割字符串
+     * 4. 崩溃恢复 - 日志中不完整的记录会被丢弃
+     * @throws UncheckedIOException 用户快照读取失败，或用户日志无法回放或打开；服务器拒绝启动
+     */
+    public static void loadUsersFromFile() {
+        if (binarySnapshot) {
+            openBinarySnapshot();
+        } else {
+            loadTextSnapshot();
+        }
+
+        try {
+            int replayed = journal.replay((username, password) -> users.put(username, new User(username, password)));
+            if (replayed > 0) {
+                Log.info("从用户日志恢复 " + replayed + " 条记录");
+            }
+            journal.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("打开用户日志失败：" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 初始化用户数据
+     * 作用：由Server启动时调用，提前触发静态代码块加载用户；
+     *      用户日志打不开时启动直接失败，而不是等到第一次注册时才发现
+     */
+    public static void init() {
+    }
+
+    /**
+     * 读取文本快照users.txt
+     * 作用：把文件中的每个用户都放入内存；文件不存在时创建空文件
+     * @throws UncheckedIOException 文件存在但读取失败；只加载了部分用户时继续运行，
+     *         下一次日志压缩会用这些用户重写快照，没读到的账号就丢了，所以拒绝启动
+     */
+    private static void loadTextSnapshot() {
+        try(BufferedReader reader = new BufferedReader(new FileReader(USER_FILE, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // 文件格式：username,password
+                String[] data = line.split(",");
+                if(data.length == 2) {
+                    users.put(data[0], new User(data[0], data[1]));
+                }
+            }
+            Log.info("Loaded " + users.size() + " users.");
+        }catch (FileNotFoundException e){
+            Log.warn("Users file not found.");
+            try {
+                new File(USER_FILE).createNewFile();
+            }catch (IOException ex){
+                Log.warn("创建用户文件失败：" + ex.getMessage());
+            }
+        }catch (IOException e) {
+            throw new UncheckedIOException("读取用户文件失败：" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 打开二进制快照users.bin
+     * 作用：只做内存映射，不读取任何用户，启动时间和用户总数无关；
+     *      第一次使用时如果只有users.txt，先自动转换一次
+     * @throws UncheckedIOException 转换、映射或校验失败；这时内存中没有快照里的用户，
+     *         下一次日志压缩会用不完整的用户集合覆盖users.bin，所以拒绝启动
+     */
+    private static void openBinarySnapshot() {
+        Path binaryFile = Paths.get(BINARY_USER_FILE);
+        try {
+            if (!Files.exists(binaryFile)) {
+                Path textFile = Paths.get(USER_FILE);
+                if (Files.exists(textFile)) {
+                    Log.info("已将 " + UserSnapshot.convert(textFile, binaryFile) + " 个用户转换为二进制快照");
+                } else {
+                    UserSnapshot.write(binaryFile, new ArrayList<>(), new ArrayList<>());
+                }
+            }
+            snapshot = UserSnapshot.open(binaryFile);
+            Log.info("已映射二进制用户快照，共 " + snapshot.size() + " 个用户");
+        } catch (IOException e) {
+            throw new UncheckedIOException("打开二进制用户快照失败：" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 写出用户快照
+     * 作用：日志压缩时由UserJournal的写线程调用，把当前所有用户写入指定文件
+     * @param target 目标文件（临时文件，写完后由UserJournal原子替换users.txt）
+     * @throws IOException 写入失败
+     */
+    private static void writeSnapshot(Path target) throws IOException {
+        if (binarySnapshot) {
+            writeBinarySnapshot(target);
+            return;
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            for (User user : users.values()) {
+                writer.write(user.getUsername() + "," + user.getPassword());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * 写出二进制快照
+     * 作用：把旧快照中的用户和内存中的新用户合并成新的二进制快照
+     * @param target 目标文件
+     * @throws IOException 写入失败
+     */
+    private static void writeBinarySnapshot(Path target) throws IOException {
+        List<String> usernames = new ArrayList<>();
+        List<String> credentials = new ArrayList<>();
+        UserSnapshot current = snapshot;
+        if (current != null) {
+            current.forEach((username, credential) -> {
+                if (!users.containsKey(username)) {
+                    usernames.add(username);
+                    credentials.add(credential);
+                }
+            });
+        }
+        compactedUsers = new ArrayList<>(users.values());
+        for (User user : compactedUsers) {
+            usernames.add(user.getUsername());
+            credentials.add(user.getPassword());
+        }
+        UserSnapshot.write(target, usernames, credentials);
+    }
+
+    /**
+     * 新快照已替换旧快照
+     * 作用：二进制模式下重新映射新快照，再把已经写入快照的新用户从内存中移除
+     * 知识点：先切换快照再移除，任何时刻都能查到这些用户；
+     *        remove(key, value)保证不会误删压缩期间重新写入的数据
+     * @param snapshotFile 新快照文件
+     * @throws IOException 映射失败
+     */
+    private static void snapshotInstalled(Path snapshotFile) throws IOException {
+        if (!binarySnapshot) {
+            return;
+        }
+        snapshot = UserSnapshot.open(snapshotFile);
+        for (User user : compactedUsers) {
+            users.remove(user.getUsername(), user);
+        }
+        compactedUsers = new ArrayList<>();
+    }
+
+    /**
+     * 按用户名查找用户
+     * 作用：先查内存中的用户，二进制模式下再到映射的快照文件中查找
+     * @param username 用户名
+     * @return 用户，不存在时返回null
+     */
+    private static User findUser(String username) {
+        if (username == null) {
+            return null;
+        }
+        User user = users.get(username);
+        if (user == null) {
+            UserSnapshot current = snapshot;
+            if (current != null) {
+                String credential = current.findCredential(username);
+                if (credential != null) {
+                    user = new User(username, credential);
+                }
+            }
+        }
+        return user;
+    }
+
+    /**
+     * 验证用户名格式
+     * 作用：检查用户名是否符合要求（6-18位纯字母）
+     * @param username 用户名
+     * @return 是否符合格式要求
+     */
+    public static boolean isValidUsername(String username) {
+        if (username == null || username.isEmpty()) {
+            return false;
+        }
+        return USERNAME_PATTERN.matcher(username).matches();
+    }
+
+    /**
+     * 验证密码格式
+     * 作用：检查密码是否符合要求（3-8位，第一位是字母，后面是数字）
+     * @param password 密码
+     * @return 是否符合格式要求
+     */
+    public static boolean isValidPassword(String password) {
+        if (password == null || password.isEmpty()) {
+            return false;
+        }
+        return PASSWORD_PATTERN.matcher(password).matches();
+    }
+
+    /**
+     * 检查用户名是否已存在
+     * 作用：注册时检查用户名是否已被使用
+     * @param username 用户名
+     * @return 是否已存在
+     */
+    public static boolean isUsernameExists(String username) {
+        return findUser(username) != null;
+    }
+
+
+
+    /**
+     * 用户注册
+     * 作用：注册新用户，验证格式和唯一性，保存到文件
+     * @param username 用户名
+     * @param password 密码
+     * @return 注册结果信息
+     */
+    public static String register(String username, String password) {
+        // 验证用户格式
+        if(!isValidUsername(username)){
+            return "注册失败：用户名格式不正确（6-18位纯字母）";
+        }
+
+        // 验证密码
+        if(!isValidPassword(password)){
+            return "注册失败：密码格式不正确（3-8位，第一位字母，后面数字）";
+        }
+
+        // 3. 检查用户名是否已存在（计算哈希之前先快速检查一次）
+        if (isUsernameExists(username)) {
+            return "注册失败：用户名已存在";
+        }
+
+        // 4. 计算密码哈希并创建新用户
+        // putIfAbsent是原子操作，两个线程同时注册同一个用户名时只有一个能成功
+        String credential = PasswordHasher.hash(password);
+        if (users.putIfAbsent(username, new User(username, credential)) != null) {
+            return "注册失败：用户名已存在";
+        }
+
+        // 5. 追加到日志，等待组提交fsync完成后才算注册成功
+        try {
+            journal.append(username, credential).join();
+        } catch (CompletionException e) {
+            users.remove(username);
+            return "注册失败：保存用户数据失败";
+        }
+        Federation.publishUser(username, credential, false);
+        return "注册成功！";
+    }
+
+    /**
+     * 用户登录
+     * 作用：验证用户名和密码是否正确
+     * @param username 用户名
+     * @param password 密码
+     * @return 登录结果信息
+     * 知识点：
+     * 1. 用户认证 - 验证用户名和密码的匹配
+     * 2. 哈希查找 - 按用户名直接取出用户，不再遍历所有用户
+     * 3. 哈希比较 - 由PasswordHasher重新计算哈希后比较
+     */
+    public static String login(String username, String password) {
+        User user = findUser(username);
+        if (user != null && PasswordHasher.verify(password, user.getPassword())) {
+            if (!PasswordHasher.isHashed(user.getPassword())) {
+                upgradeCredential(username, password);
+            }
+            return "登录成功！欢迎 " + username;
+        }
+        return "登录失败：用户名或密码错误";
+    }
+
+    /**
+     * 升级旧的明文密码
+     * 作用：明文密码登录成功后换成哈希凭证，追加到日志，压缩后快照里也不再有明文
+     * @param username 用户名
+     * @param password 已验证正确的明文密码
+     */
+    private static void upgradeCredential(String username, String password) {
+        String credential = PasswordHasher.hash(password);
+        users.put(username, new User(username, credential));
+        journal.append(username, credential);
+        Federation.publishUser(username, credential, true);
+    }
+
+    /**
+     * 应用其他节点同步来的用户记录
+     * 作用：联邦模式下由Federation调用。用户存储是最终一致的：记录异步同步，各节点在一段时间后才看到其他节点的新用户。
+     *      本地没有这个用户时直接保存；同步来的是密码升级时，只替换本地的明文密码
+     *      （各节点对同一个明文密码算出的哈希不同，但都能验证同一个密码，本地已是哈希时保留本地的）；
+     *      同步来的是注册而本地已有不同的记录时（两个节点同时注册了同一个用户名），这是冲突：
+     *      不覆盖本地记录，由调用者报告，两个用户各自在注册的节点上仍然可以登录
+     * @param username 用户名
+     * @param credential 凭证
+     * @param upgrade 是否是密码升级（否则是注册）
+     *      写入用putIfAbsent/replace，和本地register的putIfAbsent竞争时不会覆盖刚注册成功的账号，
+     *      写入失败说明本地记录刚被改变，重新判断一次（这时本地刚注册的不同记录会按冲突返回false）
+     * @return 发生注册冲突、没有保存时返回false
+     */
+    public static boolean applyReplicated(String username, String credential, boolean upgrade) {
+        if (!isValidUsername(username) || credential == null || credential.isEmpty()
+                || credential.indexOf(',') >= 0 || credential.indexOf('\n') >= 0) {
+            return true;
+        }
+        User replicated = new User(username, credential);
+        while (true) {
+            User existing = findUser(username);
+            boolean stored;
+            if (existing == null) {
+                stored = users.putIfAbsent(username, replicated) == null;
+            } else {
+                if (existing.getPassword().equals(credential)) {
+                    return true;
+                }
+                if (!upgrade) {
+                    return false;
+                }
+                if (PasswordHasher.isHashed(existing.getPassword())) {
+                    return true;
+                }
+                // 只在快照中的用户不在users里，用putIfAbsent；否则只替换刚才看到的那条明文记录
+                stored = users.get(username) == existing
+                        ? users.replace(username, existing, replicated)
+                        : users.putIfAbsent(username, replicated) == null;
+            }
+            if (stored) {
+                journal.append(username, credential);
+                return true;
+            }
+        }
+    }
+}
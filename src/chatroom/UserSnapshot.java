@@ -0,0 +1,226 @@
+package chatroom;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * UserSnapshot类 - 二进制用户快照
+ * 作用：把全部用户保存成一个带哈希索引的二进制文件，启动时用FileChannel.map映射到内存，
+ *      不需要逐行解析、也不需要为每个用户创建User对象，登录时才按用户名去文件里查找
+ * 文件格式（大端序）：
+ *      int 魔数 | int 槽位数（2的幂） | int 用户数
+ *      int[槽位数] 每个槽位保存记录在文件中的偏移量，0表示空槽（线性探测）
+ *      记录：short 用户名字节数 | 用户名UTF-8 | short 凭证字节数 | 凭证UTF-8
+ * 知识点：
+ * 1. 内存映射文件 - 文件内容由操作系统按需换入，不占用Java堆
+ * 2. 开放寻址哈希表 - 直接存放在文件里，查找不需要先把数据读入内存
+ * 3. 转换工具 - main方法把现有的users.txt转换成二进制快照
+ */
+public class UserSnapshot {
+    private static final int MAGIC = 0x43485531;  // "CHU1"
+    private static final int HEADER_SIZE = 12;  // 魔数 + 槽位数 + 用户数
+
+    private final ByteBuffer buffer;  // 映射的只读缓冲区
+    private final int slotCount;  // 槽位数
+    private final int userCount;  // 用户数
+
+    private UserSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("不是有效的用户快照文件");
+        }
+        this.slotCount = buffer.getInt(4);
+        this.userCount = buffer.getInt(8);
+    }
+
+    /**
+     * 打开快照文件
+     * 作用：只读映射整个文件，打开时间和文件大小无关
+     * @param file 快照文件
+     * @return 快照
+     * @throws IOException 文件不存在或格式错误
+     */
+    public static UserSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // 映射建立后关闭通道不影响映射
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new UserSnapshot(mapped);
+        }
+    }
+
+    /**
+     * 查找用户凭证
+     * @param username 用户名
+     * @return 凭证（密码），不存在时返回null
+     */
+    public String findCredential(String username) {
+        byte[] key = username.getBytes(StandardCharsets.UTF_8);
+        int mask = slotCount - 1;
+        int slot = hash(key) & mask;
+        // 写入时保证至少一半的槽位是空的，探测一定会遇到空槽而结束
+        while (true) {
+            int offset = buffer.getInt(HEADER_SIZE + slot * 4);
+            if (offset == 0) {
+                return null;
+            }
+            if (keyEquals(offset, key)) {
+                int credentialOffset = offset + 2 + key.length;
+                return readString(credentialOffset);
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * 比较offset处记录的用户名是否等于key，直接比较映射内存中的字节
+     */
+    private boolean keyEquals(int offset, byte[] key) {
+        int length = buffer.getShort(offset) & 0xFFFF;
+        if (length != key.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(offset + 2 + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 读取offset处以short长度开头的字符串
+     */
+    private String readString(int offset) {
+        int length = buffer.getShort(offset) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(offset + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 遍历所有用户
+     * 作用：压缩时把旧快照和新注册的用户合并成新快照
+     * @param consumer 接收用户名和凭证
+     */
+    public void forEach(BiConsumer<String, String> consumer) {
+        for (int slot = 0; slot < slotCount; slot++) {
+            int offset = buffer.getInt(HEADER_SIZE + slot * 4);
+            if (offset != 0) {
+                int usernameLength = buffer.getShort(offset) & 0xFFFF;
+                consumer.accept(readString(offset), readString(offset + 2 + usernameLength));
+            }
+        }
+    }
+
+    /**
+     * 获取用户数
+     * @return 用户数
+     */
+    public int size() {
+        return userCount;
+    }
+
+    /**
+     * 写出快照文件
+     * @param target 目标文件
+     * @param usernames 用户名
+     * @param credentials 凭证，和usernames一一对应
+     * @throws IOException 写入失败
+     */
+    public static void write(Path target, List<String> usernames, List<String> credentials) throws IOException {
+        int count = usernames.size();
+        // 槽位数至少是用户数的2倍，保证负载因子不超过0.5
+        int slotCount = Integer.highestOneBit(Math.max(16, count * 2 - 1)) << 1;
+        int[] slots = new int[slotCount];
+        byte[][] keys = new byte[count][];
+        byte[][] values = new byte[count][];
+
+        int offset = HEADER_SIZE + slotCount * 4;
+        for (int i = 0; i < count; i++) {
+            keys[i] = usernames.get(i).getBytes(StandardCharsets.UTF_8);
+            values[i] = credentials.get(i).getBytes(StandardCharsets.UTF_8);
+            int slot = hash(keys[i]) & (slotCount - 1);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (slotCount - 1);
+            }
+            slots[slot] = offset;
+            offset += 4 + keys[i].length + values[i].length;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(slotCount);
+            out.writeInt(count);
+            for (int slot : slots) {
+                out.writeInt(slot);
+            }
+            for (int i = 0; i < count; i++) {
+                out.writeShort(keys[i].length);
+                out.write(keys[i]);
+                out.writeShort(values[i].length);
+                out.write(values[i]);
+            }
+        }
+    }
+
+    /**
+     * 把文本格式的users.txt转换成二进制快照
+     * @param textFile 文本文件（每行 username,password）
+     * @param target 二进制快照文件
+     * @return 转换的用户数
+     * @throws IOException 读写失败
+     */
+    public static int convert(Path textFile, Path target) throws IOException {
+        // 同名用户以最后一行为准，和文本格式的加载逻辑一致
+        Map<String, String> users = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(textFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] data = line.split(",");
+                if (data.length == 2) {
+                    users.put(data[0], data[1]);
+                }
+            }
+        }
+        write(target, new ArrayList<>(users.keySet()), new ArrayList<>(users.values()));
+        return users.size();
+    }
+
+    /**
+     * FNV-1a哈希
+     */
+    private static int hash(byte[] key) {
+        int h = 0x811C9DC5;
+        for (byte b : key) {
+            h ^= b & 0xFF;
+            h *= 0x01000193;
+        }
+        return h;
+    }
+
+    /**
+     * 转换工具入口
+     * 用法：java UserSnapshot [users.txt] [users.bin]
+     */
+    public static void main(String[] args) throws IOException {
+        Path textFile = Paths.get(args.length > 0 ? args[0] : "users.txt");
+        Path target = Paths.get(args.length > 1 ? args[1] : "users.bin");
+        int count = convert(textFile, target);
+        System.out.println("已转换 " + count + " 个用户到 " + target);
+    }
+}
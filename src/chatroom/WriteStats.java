@@ -0,0 +1,55 @@
+package chatroom;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WriteStats类 - 发送统计
+ * 作用：统计服务器写给客户端的消息条数和实际的写系统调用次数，
+ *      两者相除就是平均每次系统调用写出了多少条消息，用来观察合并写出的效果
+ * 知识点：
+ * 1. LongAdder - 所有写线程（或Selector线程）同时累加，不互相竞争
+ * 2. 合并写出 - 消息先攒在缓冲区里，队列取空或缓冲区写满时才真正写一次socket
+ */
+public class WriteStats {
+    private static final LongAdder messages = new LongAdder();  // 写出的消息条数
+    private static final LongAdder writes = new LongAdder();  // socket写系统调用次数
+    private static final LongAdder bytes = new LongAdder();  // 写出的字节数
+
+    /**
+     * 记录写出的消息条数
+     * @param count 条数
+     */
+    public static void recordMessages(int count) {
+        messages.add(count);
+    }
+
+    /**
+     * 记录一次socket写操作
+     * @param written 写出的字节数
+     */
+    public static void recordWrite(long written) {
+        writes.increment();
+        bytes.add(written);
+    }
+
+    public static long getMessages() {
+        return messages.sum();
+    }
+
+    public static long getWrites() {
+        return writes.sum();
+    }
+
+    public static long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * 平均每次写系统调用写出的消息条数
+     * @return 消息条数 / 写次数
+     */
+    public static double getMessagesPerWrite() {
+        long count = writes.sum();
+        return count == 0 ? 0 : (double) messages.sum() / count;
+    }
+}